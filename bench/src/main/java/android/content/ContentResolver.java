@@ -0,0 +1,21 @@
+package android.content;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * Stand-in of Android content resolver with just the members that benchmarked sources use,
+ * answered by a single provider that extends it.
+ */
+public abstract class ContentResolver {
+
+	/**
+	 * Since Android R a row limit goes in query arguments, before that it goes after sort order,
+	 * which is the only way stand-in takes it.
+	 */
+	public abstract Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+			String sortOrder);
+
+	public abstract Bundle call(String authority, String method, String arg, Bundle extras);
+}
@@ -0,0 +1,9 @@
+package android.content;
+
+/**
+ * Stand-in of Android context with just the members that benchmarked sources use.
+ */
+public abstract class Context {
+
+	public abstract ContentResolver getContentResolver();
+}
@@ -0,0 +1,34 @@
+package android.database;
+
+import java.io.Closeable;
+
+/**
+ * Stand-in of Android cursor with just the members that benchmarked sources use.
+ */
+public interface Cursor extends Closeable {
+
+	int getCount();
+
+	int getPosition();
+
+	boolean moveToFirst();
+
+	boolean moveToNext();
+
+	boolean moveToPosition(int position);
+
+	int getColumnIndex(String columnName);
+
+	String getString(int columnIndex);
+
+	int getInt(int columnIndex);
+
+	long getLong(int columnIndex);
+
+	double getDouble(int columnIndex);
+
+	boolean isNull(int columnIndex);
+
+	@Override
+	void close();
+}
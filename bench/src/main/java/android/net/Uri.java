@@ -0,0 +1,42 @@
+package android.net;
+
+import java.net.URI;
+
+/**
+ * Stand-in of Android URI with just the members that benchmarked sources use.
+ */
+public final class Uri {
+
+	private final URI uri;
+
+	private Uri(URI uri) {
+		this.uri = uri;
+	}
+
+	public static Uri parse(String uriString) {
+		return new Uri(URI.create(uriString));
+	}
+
+	public String getAuthority() {
+		return uri.getAuthority();
+	}
+
+	public String getPath() {
+		return uri.getPath();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Uri && uri.equals(((Uri) other).uri);
+	}
+
+	@Override
+	public int hashCode() {
+		return uri.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return uri.toString();
+	}
+}
@@ -0,0 +1,28 @@
+package android.os;
+
+/**
+ * Stand-in of Android build info. API level is taken from {@code android.sdk} system property,
+ * so that version specific paths of benchmarked sources can be picked.
+ */
+public final class Build {
+
+	private Build() {
+	}
+
+	public static final class VERSION {
+		public static final int SDK_INT = Integer.getInteger("android.sdk", VERSION_CODES.UPSIDE_DOWN_CAKE);
+
+		private VERSION() {
+		}
+	}
+
+	public static final class VERSION_CODES {
+		public static final int O_MR1 = 27;
+		public static final int Q = 29;
+		public static final int R = 30;
+		public static final int UPSIDE_DOWN_CAKE = 34;
+
+		private VERSION_CODES() {
+		}
+	}
+}
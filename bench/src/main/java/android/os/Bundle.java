@@ -0,0 +1,30 @@
+package android.os;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in of Android bundle with just the members that benchmarked sources use.
+ */
+public final class Bundle {
+
+	private final Map<String, Object> values = new HashMap<>();
+
+	public void putLong(String key, long value) {
+		values.put(key, value);
+	}
+
+	public long getLong(String key) {
+		final Object value = values.get(key);
+		return value instanceof Long ? (Long) value : 0;
+	}
+
+	public void putString(String key, String value) {
+		values.put(key, value);
+	}
+
+	public String getString(String key) {
+		final Object value = values.get(key);
+		return value instanceof String ? (String) value : null;
+	}
+}
@@ -0,0 +1,100 @@
+package android.provider;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * Stand-in of Android MediaStore with just the members that benchmarked sources use. Column names, URIs
+ * and calls are the same as Android ones, so that a provider made for them is asked the same way.
+ */
+public final class MediaStore {
+
+	public static final String AUTHORITY = "media";
+	public static final String VOLUME_EXTERNAL = "external";
+	public static final String VOLUME_EXTERNAL_PRIMARY = "external_primary";
+
+	public static final String GET_VERSION_CALL = "get_version";
+	public static final String GET_GENERATION_CALL = "get_generation";
+	public static final String EXTRA_TEXT = "android.intent.extra.TEXT";
+	public static final String EXTRA_INDEX = "android.intent.extra.INDEX";
+
+	private MediaStore() {
+	}
+
+	public static long getGeneration(Context context, String volumeName) {
+		return context.getContentResolver().call(AUTHORITY, GET_GENERATION_CALL, volumeName, null)
+				.getLong(EXTRA_INDEX);
+	}
+
+	public static String getVersion(Context context, String volumeName) {
+		final Bundle result = context.getContentResolver().call(AUTHORITY, GET_VERSION_CALL, volumeName, null);
+		return result.getString(EXTRA_TEXT);
+	}
+
+	public interface MediaColumns {
+		String _ID = "_id";
+		String TITLE = "title";
+		String DATE_TAKEN = "datetaken";
+		String DATE_ADDED = "date_added";
+		String DATE_MODIFIED = "date_modified";
+		String GENERATION_MODIFIED = "generation_modified";
+		String MIME_TYPE = "mime_type";
+		String WIDTH = "width";
+		String HEIGHT = "height";
+		String ORIENTATION = "orientation";
+		String DURATION = "duration";
+		String SIZE = "_size";
+		String BUCKET_ID = "bucket_id";
+		String BUCKET_DISPLAY_NAME = "bucket_display_name";
+	}
+
+	public static final class Files {
+		private Files() {
+		}
+
+		public static Uri getContentUri(String volumeName) {
+			return Uri.parse("content://" + AUTHORITY + "/" + volumeName + "/file");
+		}
+
+		public interface FileColumns extends MediaColumns {
+			String MEDIA_TYPE = "media_type";
+			int MEDIA_TYPE_IMAGE = 1;
+			int MEDIA_TYPE_VIDEO = 3;
+		}
+	}
+
+	public static final class Images {
+		private Images() {
+		}
+
+		public interface ImageColumns extends MediaColumns {
+			String LATITUDE = "latitude";
+			String LONGITUDE = "longitude";
+		}
+
+		public static final class Media implements ImageColumns {
+			public static final Uri EXTERNAL_CONTENT_URI =
+					Uri.parse("content://" + AUTHORITY + "/" + VOLUME_EXTERNAL + "/images/media");
+
+			private Media() {
+			}
+		}
+	}
+
+	public static final class Video {
+		private Video() {
+		}
+
+		public interface VideoColumns extends MediaColumns {
+		}
+
+		public static final class Media implements VideoColumns {
+			public static final Uri EXTERNAL_CONTENT_URI =
+					Uri.parse("content://" + AUTHORITY + "/" + VOLUME_EXTERNAL + "/video/media");
+
+			private Media() {
+			}
+		}
+	}
+}
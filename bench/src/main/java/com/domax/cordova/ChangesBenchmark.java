@@ -0,0 +1,83 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID snapshots of {@code changesSince()}: following up a token, which reads the previous snapshot and writes
+ * a new one, and starting from scratch, which only writes one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangesBenchmark {
+
+	@Param({"1000", "50000", "200000"})
+	public int rows;
+
+	private SyntheticMediaStore store;
+	private Context context;
+	private File dir;
+	private MediaChanges changes;
+	private String token;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = new SyntheticMediaStore();
+		store.generate(rows, PagesBenchmark.BUCKETS, rows);
+		context = new Context() {
+			@Override
+			public ContentResolver getContentResolver() {
+				return store;
+			}
+		};
+		dir = Files.createTempDirectory("changes").toFile();
+		changes = new MediaChanges(dir);
+		token = changes.start(context, null).getToken();
+		// Deletions are found by comparing snapshots, so let the first follow-up find some
+		store.deleteEvery(20);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		store.close();
+		final File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files) Files.delete(file.toPath());
+		Files.delete(dir.toPath());
+	}
+
+	@Benchmark
+	public JSONArray followUp() throws Exception {
+		final MediaChanges.Delta delta = changes.start(context, token);
+		if (delta.isReset()) throw new IllegalStateException("Token wasn't followed up");
+		token = delta.getToken();
+		return delta.deleted();
+	}
+
+	@Benchmark
+	public JSONArray fromScratch() throws Exception {
+		return changes.start(context, null).deleted();
+	}
+}
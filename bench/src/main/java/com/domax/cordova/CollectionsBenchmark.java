@@ -0,0 +1,66 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code collections()} of the library in its camera roll and albums modes, queried and aggregated
+ * by {@link MediaBuckets} the way {@code Photos.collections()} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionsBenchmark {
+
+	@Param({"1000", "50000", "200000"})
+	public int rows;
+
+	@Param({"roll", "albums"})
+	public String mode;
+
+	private SyntheticMediaStore store;
+	private String selection;
+	private String[] selectionArgs;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = new SyntheticMediaStore();
+		store.generate(rows, PagesBenchmark.BUCKETS, rows);
+		if ("roll".equals(mode)) {
+			selection = MediaStore.MediaColumns.BUCKET_DISPLAY_NAME + "=?";
+			selectionArgs = new String[]{"Camera"};
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		store.close();
+	}
+
+	@Benchmark
+	public JSONArray collections() throws Exception {
+		try (Cursor cursor = store.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, MediaBuckets.PROJECTION,
+				selection, selectionArgs, MediaBuckets.ORDER)) {
+			return MediaBuckets.aggregate(cursor);
+		}
+	}
+}
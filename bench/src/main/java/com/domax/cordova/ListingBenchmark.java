@@ -0,0 +1,90 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole {@code photos()} listing sent in adaptive bundles paced by credits, to a client that grants a credit
+ * back as soon as it gets a bundle, in both item layouts. Rows are read by {@link MediaPages} just like
+ * {@code Photos.listMedia()} reads them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+
+	private static final int BUNDLE_SIZE = 500;
+	private static final int CREDITS = 2;
+
+	@Param({"1000", "50000", "200000"})
+	public int rows;
+
+	@Param({"objects", "columnar"})
+	public String layout;
+
+	private SyntheticMediaStore store;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = new SyntheticMediaStore();
+		store.generate(rows, PagesBenchmark.BUCKETS, rows);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		store.close();
+	}
+
+	@Benchmark
+	public int photos() throws Exception {
+		final Listing[] listing = new Listing[1];
+		final int[] sent = new int[1];
+		listing[0] = new Listing("bench", new CallbackContext("bench") {
+			@Override
+			public void sendPluginResult(PluginResult pluginResult) {
+				++sent[0];
+				listing[0].grant(1);
+			}
+		}, BUNDLE_SIZE, CREDITS, true, BUNDLE_SIZE * 8, 0);
+		final MediaRowMapper.Batch batch = new MediaRowMapper.Batch("columnar".equals(layout));
+		try (Cursor cursor = store.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+				MediaRowMapper.PHOTOS.projection(), null, null, MediaPages.ORDER_BY_DATE_TAKEN)) {
+			if (cursor.moveToFirst())
+				MediaPages.read(cursor, MediaRowMapper.PHOTOS.bind(cursor), batch, listing[0], true, 0,
+						new MediaPages.Reader() {
+							@Override
+							public void onRow(Cursor cursor) {
+							}
+
+							@Override
+							public boolean onBundle(JSONArray bundle) throws InterruptedException {
+								if (!listing[0].send(bundle)) throw new IllegalStateException("Listing was cancelled");
+								return true;
+							}
+						});
+		}
+		if (batch.length() > 0) listing[0].send(batch.drain());
+		return sent[0];
+	}
+}
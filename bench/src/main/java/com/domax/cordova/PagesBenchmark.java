@@ -0,0 +1,130 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A page of {@code photos()}, {@code videos()} and {@code media()} listings at 90% of the library:
+ * by offset, which reads all the rows up to it, and by keyset, which seeks right to it.
+ * <p>
+ * Queries are made the way {@code Photos.listMedia()} makes them before Android R, where the row limit
+ * goes after sort order, and pages are read by {@link MediaPages} just like there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagesBenchmark {
+
+	static final int BUCKETS = 100;
+
+	private static final int PAGE_SIZE = 100;
+
+	/**
+	 * Pages have no bundles, so their rows are all left in the batch.
+	 */
+	private static final MediaPages.Reader PAGE = new MediaPages.Reader() {
+		@Override
+		public void onRow(Cursor cursor) {
+		}
+
+		@Override
+		public boolean onBundle(JSONArray bundle) {
+			return true;
+		}
+	};
+
+	@Param({"1000", "50000", "200000"})
+	public int rows;
+
+	@Param({"photos", "videos", "media"})
+	public String listing;
+
+	private SyntheticMediaStore store;
+	private Uri uri;
+	private MediaRowMapper mapper;
+	private String selection;
+	private int offset;
+	private String after;
+
+	@Setup
+	public void setUp() throws Exception {
+		store = new SyntheticMediaStore();
+		store.generate(rows, BUCKETS, rows);
+		switch (listing) {
+			case "photos":
+				uri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+				mapper = MediaRowMapper.PHOTOS;
+				break;
+			case "videos":
+				uri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+				mapper = MediaRowMapper.VIDEOS;
+				break;
+			default:
+				uri = MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL);
+				mapper = MediaRowMapper.MEDIA;
+				selection = MediaChanges.SEL_MEDIA;
+		}
+		try (Cursor cursor = store.query(uri, mapper.projection(), selection, null,
+				MediaPages.ORDER_BY_DATE_TAKEN)) {
+			offset = cursor.getCount() * 9 / 10;
+			if (!cursor.moveToPosition(offset - 1)) throw new IllegalStateException("Library is too small");
+			after = MediaPages.token(cursor);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		store.close();
+	}
+
+	@Benchmark
+	public JSONArray offsetPage() throws Exception {
+		try (Cursor cursor = store.query(uri, mapper.projection(), selection, null, MediaPages.ORDER_BY_DATE_TAKEN)) {
+			if (!cursor.moveToPosition(offset)) throw new IllegalStateException("No page at " + offset);
+			return readPage(cursor);
+		}
+	}
+
+	@Benchmark
+	public JSONArray keysetPage() throws Exception {
+		final List<String> clauses = new ArrayList<>();
+		final List<String> args = new ArrayList<>();
+		if (selection != null) clauses.add(selection);
+		try (Cursor cursor = store.query(uri, mapper.projection(), MediaPages.selection(after, clauses, args),
+				args.toArray(new String[args.size()]),
+				MediaPages.ORDER_BY_DATE_TAKEN + " LIMIT " + (PAGE_SIZE + 1))) {
+			if (!cursor.moveToFirst()) throw new IllegalStateException("No page after " + after);
+			return readPage(cursor);
+		}
+	}
+
+	private JSONArray readPage(Cursor cursor) throws Exception {
+		final MediaRowMapper.Batch batch = new MediaRowMapper.Batch(false);
+		final Listing page = new Listing("bench", new CallbackContext("bench"), 0, 0, false, 0, 0);
+		MediaPages.read(cursor, mapper.bind(cursor), batch, page, false, PAGE_SIZE, PAGE);
+		return batch.drain();
+	}
+}
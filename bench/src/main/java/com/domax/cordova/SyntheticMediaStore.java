@@ -0,0 +1,268 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * MediaStore of a synthetic library, backed by an in-memory SQLite table that looks like MediaStore files table:
+ * photos and videos spread over many buckets, taken in no particular order of their IDs, some of them without
+ * a taken date.
+ * <p>
+ * Images, video and files URIs of external volume select the photos, the videos or all of them. Query results
+ * are read into memory at once, just like MediaStore cursors fill their windows, before they are returned.
+ */
+final class SyntheticMediaStore extends ContentResolver implements AutoCloseable {
+
+	private static final String TABLE = "files";
+
+	private final Connection db;
+	private long generation;
+
+	SyntheticMediaStore() throws SQLException {
+		db = DriverManager.getConnection("jdbc:sqlite::memory:");
+		try (Statement statement = db.createStatement()) {
+			statement.execute("CREATE TABLE " + TABLE + " ("
+					+ MediaStore.MediaColumns._ID + " INTEGER PRIMARY KEY,"
+					+ MediaStore.MediaColumns.TITLE + " TEXT,"
+					+ MediaStore.MediaColumns.DATE_TAKEN + " INTEGER,"
+					+ MediaStore.MediaColumns.DATE_ADDED + " INTEGER,"
+					+ MediaStore.MediaColumns.DATE_MODIFIED + " INTEGER,"
+					+ MediaStore.MediaColumns.GENERATION_MODIFIED + " INTEGER,"
+					+ MediaStore.MediaColumns.MIME_TYPE + " TEXT,"
+					+ MediaStore.Files.FileColumns.MEDIA_TYPE + " INTEGER,"
+					+ MediaStore.MediaColumns.WIDTH + " INTEGER,"
+					+ MediaStore.MediaColumns.HEIGHT + " INTEGER,"
+					+ MediaStore.MediaColumns.ORIENTATION + " INTEGER,"
+					+ MediaStore.MediaColumns.DURATION + " INTEGER,"
+					+ MediaStore.MediaColumns.SIZE + " INTEGER,"
+					+ MediaStore.Images.ImageColumns.LATITUDE + " REAL,"
+					+ MediaStore.Images.ImageColumns.LONGITUDE + " REAL,"
+					+ MediaStore.MediaColumns.BUCKET_ID + " TEXT,"
+					+ MediaStore.MediaColumns.BUCKET_DISPLAY_NAME + " TEXT)");
+			// Just like MediaProvider, which indexes files by taken date and by bucket
+			statement.execute("CREATE INDEX date_taken_index ON " + TABLE + " ("
+					+ MediaStore.MediaColumns.DATE_TAKEN + "," + MediaStore.MediaColumns._ID + ")");
+			statement.execute("CREATE INDEX bucket_index ON " + TABLE + " ("
+					+ MediaStore.MediaColumns.BUCKET_ID + ")");
+		}
+	}
+
+	/**
+	 * Replaces the library with a generated one. Every 10th item is a video, every 50th has no taken date,
+	 * every 4th is rotated and every 3rd is geotagged. Same arguments make the same library.
+	 *
+	 * @param rows    an amount of items.
+	 * @param buckets an amount of buckets to spread them over, the first one is Camera.
+	 */
+	synchronized void generate(int rows, int buckets, long seed) throws SQLException {
+		final Random random = new Random(seed);
+		final long now = 1700000000000L;
+		db.setAutoCommit(false);
+		try (Statement statement = db.createStatement();
+				PreparedStatement insert = db.prepareStatement("INSERT INTO " + TABLE
+						+ " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)")) {
+			statement.execute("DELETE FROM " + TABLE);
+			for (int i = 1; i <= rows; ++i) {
+				final boolean video = i % 10 == 0;
+				// Camera gets a half of the library, the rest goes to other buckets
+				final int bucket = buckets > 1 && random.nextBoolean() ? 1 + random.nextInt(buckets - 1) : 0;
+				// Items are taken about a minute apart
+				final long taken = now - (long) random.nextInt(rows * 60) * 1000;
+				insert.setLong(1, i);
+				insert.setString(2, (video ? "VID_" : "IMG_") + i);
+				if (i % 50 != 0) insert.setLong(3, taken);
+				else insert.setNull(3, Types.INTEGER);
+				insert.setLong(4, taken / 1000);
+				insert.setLong(5, taken / 1000);
+				insert.setLong(6, i);
+				insert.setString(7, video ? "video/mp4" : i % 7 == 0 ? "image/png" : "image/jpeg");
+				insert.setInt(8, video ? MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+						: MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+				insert.setInt(9, 4032);
+				insert.setInt(10, 3024);
+				insert.setInt(11, i % 4 == 0 ? 90 : 0);
+				if (video) insert.setLong(12, 1000 + random.nextInt(120000));
+				else insert.setNull(12, Types.INTEGER);
+				insert.setLong(13, 500000 + random.nextInt(5000000));
+				insert.setDouble(14, i % 3 == 0 ? random.nextDouble() * 180 - 90 : 0);
+				insert.setDouble(15, i % 3 == 0 ? random.nextDouble() * 360 - 180 : 0);
+				insert.setString(16, String.valueOf(1000 + bucket));
+				insert.setString(17, bucket == 0 ? "Camera" : "Album " + bucket);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			db.commit();
+		} finally {
+			db.setAutoCommit(true);
+		}
+		generation = rows;
+	}
+
+	/**
+	 * Deletes every {@code step}-th item, as if user cleaned the library up.
+	 */
+	synchronized void deleteEvery(int step) throws SQLException {
+		try (Statement statement = db.createStatement()) {
+			statement.execute("DELETE FROM " + TABLE + " WHERE " + MediaStore.MediaColumns._ID + " % " + step + " = 0");
+		}
+	}
+
+	@Override
+	public synchronized Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+			String sortOrder) {
+		final StringBuilder sql = new StringBuilder("SELECT ");
+		if (projection == null) sql.append('*');
+		else for (int i = 0; i < projection.length; ++i) sql.append(i > 0 ? "," : "").append(projection[i]);
+		sql.append(" FROM " + TABLE);
+		final String type = mediaTypeOf(uri);
+		if (type != null) sql.append(" WHERE " + MediaStore.Files.FileColumns.MEDIA_TYPE + "=").append(type);
+		if (selection != null) sql.append(type != null ? " AND (" : " WHERE (").append(selection).append(')');
+		if (sortOrder != null) sql.append(" ORDER BY ").append(sortOrder);
+		try (PreparedStatement statement = db.prepareStatement(sql.toString())) {
+			if (selectionArgs != null)
+				for (int i = 0; i < selectionArgs.length; ++i) statement.setString(i + 1, selectionArgs[i]);
+			try (ResultSet result = statement.executeQuery()) {
+				final ResultSetMetaData meta = result.getMetaData();
+				final String[] columns = new String[meta.getColumnCount()];
+				for (int i = 0; i < columns.length; ++i) columns[i] = meta.getColumnName(i + 1);
+				final List<Object[]> rows = new ArrayList<>();
+				while (result.next()) {
+					final Object[] row = new Object[columns.length];
+					for (int i = 0; i < columns.length; ++i) row[i] = result.getObject(i + 1);
+					rows.add(row);
+				}
+				return new SyntheticCursor(columns, rows);
+			}
+		} catch (SQLException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Answers {@link MediaStore#getGeneration} and {@link MediaStore#getVersion}.
+	 */
+	@Override
+	public synchronized Bundle call(String authority, String method, String arg, Bundle extras) {
+		final Bundle result = new Bundle();
+		result.putLong(MediaStore.EXTRA_INDEX, generation);
+		result.putString(MediaStore.EXTRA_TEXT, "synthetic");
+		return result;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		db.close();
+	}
+
+	/**
+	 * @return media type condition of given URI, or {@code null} for files URI that selects all of them.
+	 */
+	private static String mediaTypeOf(Uri uri) {
+		final String path = uri.getPath() != null ? uri.getPath() : "";
+		if (path.contains("/images/")) return String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+		if (path.contains("/video/")) return String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+		if (path.endsWith("/file")) return null;
+		throw new IllegalArgumentException("Unknown URI: " + uri);
+	}
+
+	/**
+	 * Cursor over rows read into memory, which converts values the way SQLite cursors do.
+	 */
+	private static final class SyntheticCursor implements Cursor {
+		private final String[] columns;
+		private final List<Object[]> rows;
+		private int position = -1;
+
+		SyntheticCursor(String[] columns, List<Object[]> rows) {
+			this.columns = columns;
+			this.rows = rows;
+		}
+
+		@Override
+		public int getCount() {
+			return rows.size();
+		}
+
+		@Override
+		public int getPosition() {
+			return position;
+		}
+
+		@Override
+		public boolean moveToFirst() {
+			return moveToPosition(0);
+		}
+
+		@Override
+		public boolean moveToNext() {
+			return moveToPosition(position + 1);
+		}
+
+		@Override
+		public boolean moveToPosition(int position) {
+			this.position = Math.min(Math.max(position, -1), rows.size());
+			return this.position >= 0 && this.position < rows.size();
+		}
+
+		@Override
+		public int getColumnIndex(String columnName) {
+			for (int i = 0; i < columns.length; ++i)
+				if (columns[i].equalsIgnoreCase(columnName)) return i;
+			return -1;
+		}
+
+		@Override
+		public String getString(int columnIndex) {
+			final Object value = value(columnIndex);
+			return value != null ? value.toString() : null;
+		}
+
+		@Override
+		public int getInt(int columnIndex) {
+			return (int) getLong(columnIndex);
+		}
+
+		@Override
+		public long getLong(int columnIndex) {
+			final Object value = value(columnIndex);
+			if (value instanceof Number) return ((Number) value).longValue();
+			return value != null ? Long.parseLong(value.toString()) : 0;
+		}
+
+		@Override
+		public double getDouble(int columnIndex) {
+			final Object value = value(columnIndex);
+			if (value instanceof Number) return ((Number) value).doubleValue();
+			return value != null ? Double.parseDouble(value.toString()) : 0;
+		}
+
+		@Override
+		public boolean isNull(int columnIndex) {
+			return value(columnIndex) == null;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		private Object value(int columnIndex) {
+			if (position < 0 || position >= rows.size()) throw new IllegalStateException("Cursor is out of rows");
+			return rows.get(position)[columnIndex];
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.apache.cordova;
+
+/**
+ * Stand-in of Cordova callback with just the members that benchmarked sources use.
+ * Benchmarks override {@link #sendPluginResult} to play the client.
+ */
+public class CallbackContext {
+
+	private final String callbackId;
+
+	public CallbackContext(String callbackId) {
+		this.callbackId = callbackId;
+	}
+
+	public String getCallbackId() {
+		return callbackId;
+	}
+
+	public void sendPluginResult(PluginResult pluginResult) {
+	}
+}
@@ -0,0 +1,39 @@
+package org.apache.cordova;
+
+import org.json.JSONArray;
+
+/**
+ * Stand-in of Cordova plugin result with just the members that benchmarked sources use.
+ */
+public class PluginResult {
+
+	public enum Status {
+		OK,
+		ERROR
+	}
+
+	private final Status status;
+	private final Object message;
+	private boolean keepCallback;
+
+	public PluginResult(Status status, JSONArray message) {
+		this.status = status;
+		this.message = message;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Object getMessage() {
+		return message;
+	}
+
+	public boolean getKeepCallback() {
+		return keepCallback;
+	}
+
+	public void setKeepCallback(boolean keepCallback) {
+		this.keepCallback = keepCallback;
+	}
+}
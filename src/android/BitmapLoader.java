@@ -0,0 +1,123 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes images straight to the requested size instead of decoding full-resolution originals and scaling them then.
+ * <p>
+ * Image bounds are read first, then the image is decoded with the largest power-of-two sample size
+ * that still keeps it not smaller than the requested box, and the remaining downscale is done by decoder as well.
+ */
+final class BitmapLoader {
+
+	private BitmapLoader() {
+	}
+
+	/**
+	 * Reads dimensions and type of an image without decoding its pixels.
+	 *
+	 * @return options with {@code outWidth}, {@code outHeight} and {@code outMimeType} filled,
+	 * or {@code null} if there's no image.
+	 */
+	static BitmapFactory.Options readBounds(ContentResolver resolver, Uri uri) throws IOException {
+		final BitmapFactory.Options bounds = new BitmapFactory.Options();
+		bounds.inJustDecodeBounds = true;
+		try (InputStream in = resolver.openInputStream(uri)) {
+			if (in == null) return null;
+			BitmapFactory.decodeStream(in, null, bounds);
+		}
+		return bounds.outWidth > 0 && bounds.outHeight > 0 ? bounds : null;
+	}
+
+	/**
+	 * Decodes an image so that it fits into given box keeping aspect ratio. Images are never upscaled.
+	 *
+	 * @param maxWidth  a maximal width of the result, {@code 0} or less means no limit.
+	 * @param maxHeight a maximal height of the result, {@code 0} or less means no limit.
+	 * @param config    a preferred pixel config, e.g. {@link Bitmap.Config#RGB_565} to halve memory footprint.
+	 * @param pool      a pool to take a bitmap to decode into from, or {@code null}.
+	 * @return decoded bitmap or {@code null} if there's no image.
+	 */
+	static Bitmap decode(ContentResolver resolver, Uri uri, int maxWidth, int maxHeight, Bitmap.Config config,
+			BitmapPool pool) throws IOException {
+		final BitmapFactory.Options bounds = readBounds(resolver, uri);
+		if (bounds == null) return null;
+		final int width = bounds.outWidth;
+		final int height = bounds.outHeight;
+		final double scale = fitScale(width, height, maxWidth, maxHeight);
+		final int targetWidth = Math.max((int) Math.round(width * scale), 1);
+		final int targetHeight = Math.max((int) Math.round(height * scale), 1);
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize(width, height, targetWidth, targetHeight);
+		if (config != null) options.inPreferredConfig = config;
+		final int sampledWidth = width / options.inSampleSize;
+		if (targetWidth < sampledWidth) {
+			// Let decoder do the rest of downscale, to not allocate a sampled bitmap that is scaled then
+			options.inScaled = true;
+			options.inDensity = sampledWidth;
+			options.inTargetDensity = targetWidth;
+		}
+		if (pool != null) {
+			// Decoders may round sizes up, so let inBitmap be a pixel larger each way
+			final int outWidth = (targetWidth < sampledWidth ? targetWidth : ceilDiv(width, options.inSampleSize)) + 1;
+			final int outHeight = (targetWidth < sampledWidth ? targetHeight : ceilDiv(height, options.inSampleSize)) + 1;
+			options.inMutable = true;
+			options.inBitmap = pool.getReusable(outWidth * outHeight
+					* BitmapPool.bytesPerPixel(config != null ? config : Bitmap.Config.ARGB_8888));
+		}
+		try {
+			final Bitmap bitmap = decodeStream(resolver, uri, options);
+			if (pool != null && bitmap != options.inBitmap) {
+				pool.put(options.inBitmap);
+				if (bitmap != null) pool.countAllocation();
+			}
+			return bitmap;
+		} catch (IllegalArgumentException e) {
+			// Pooled bitmap doesn't fit after all
+			if (options.inBitmap == null) throw e;
+			pool.put(options.inBitmap);
+			options.inBitmap = null;
+			pool.countAllocation();
+			return decodeStream(resolver, uri, options);
+		}
+	}
+
+	private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options)
+			throws IOException {
+		try (InputStream in = resolver.openInputStream(uri)) {
+			if (in == null) return null;
+			return BitmapFactory.decodeStream(in, null, options);
+		}
+	}
+
+	private static int ceilDiv(int value, int divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+
+	/**
+	 * @return a scale factor not greater than {@code 1} that fits image into given box keeping aspect ratio.
+	 */
+	static double fitScale(int width, int height, int maxWidth, int maxHeight) {
+		double scale = 1;
+		if (maxWidth > 0 && width > maxWidth) scale = (double) maxWidth / width;
+		if (maxHeight > 0 && height * scale > maxHeight) scale = (double) maxHeight / height;
+		return scale;
+	}
+
+	/**
+	 * @return the largest power of two sample size that keeps image not smaller than target size.
+	 */
+	static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+		int sampleSize = 1;
+		while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight)
+			sampleSize *= 2;
+		return sampleSize;
+	}
+}
@@ -0,0 +1,155 @@
+package com.domax.cordova;
+
+import android.graphics.Bitmap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte-bounded pool of mutable bitmaps, bucketed by their allocation size.
+ * <p>
+ * Pooled bitmaps are either reconfigured to the requested size to draw into, see {@link #get},
+ * or lent to decoders as {@code inBitmap}, see {@link #getReusable}.
+ * To not waste memory, a bitmap is only reused for requests of at least a quarter of its allocation.
+ * All methods are thread-safe.
+ */
+final class BitmapPool {
+
+	private static final int MAX_WASTE_FACTOR = 4;
+
+	private final long maxBytes;
+	private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+	private long bytes;
+
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong recycled = new AtomicLong();
+
+	BitmapPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	static int bytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.ALPHA_8) return 1;
+		if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+		return 4;
+	}
+
+	/**
+	 * @return a mutable bitmap of exactly given size and config, either a pooled or a new one.
+	 * Content of a pooled bitmap is erased.
+	 */
+	Bitmap get(int width, int height, Bitmap.Config config) {
+		final Bitmap pooled = take(width * height * bytesPerPixel(config));
+		if (pooled != null) {
+			try {
+				pooled.reconfigure(width, height, config);
+				pooled.eraseColor(0);
+				reused.incrementAndGet();
+				return pooled;
+			} catch (IllegalArgumentException e) {
+				pooled.recycle();
+				recycled.incrementAndGet();
+			}
+		}
+		allocated.incrementAndGet();
+		return Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * @return a pooled bitmap of at least given allocation size to be used as {@code inBitmap},
+	 * or {@code null} if there's none. Bitmap has to be {@link #put} back if decoder doesn't use it.
+	 */
+	Bitmap getReusable(int byteCount) {
+		final Bitmap pooled = take(byteCount);
+		if (pooled != null) reused.incrementAndGet();
+		return pooled;
+	}
+
+	/**
+	 * Accounts a bitmap allocated by a decoder because no pooled one fitted.
+	 */
+	void countAllocation() {
+		allocated.incrementAndGet();
+	}
+
+	/**
+	 * Returns given bitmap to the pool, or recycles it if it can't be reused or pool is full.
+	 */
+	void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) return;
+		if (bitmap.isMutable()) {
+			final int size = bitmap.getAllocationByteCount();
+			synchronized (this) {
+				if (size <= maxBytes) {
+					while (bytes + size > maxBytes) evictLargest();
+					ArrayDeque<Bitmap> bucket = buckets.get(size);
+					if (bucket == null) buckets.put(size, bucket = new ArrayDeque<>());
+					bucket.push(bitmap);
+					bytes += size;
+					return;
+				}
+			}
+		}
+		bitmap.recycle();
+		recycled.incrementAndGet();
+	}
+
+	synchronized void clear() {
+		for (ArrayDeque<Bitmap> bucket : buckets.values())
+			for (Bitmap bitmap : bucket) bitmap.recycle();
+		buckets.clear();
+		bytes = 0;
+	}
+
+	JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		result.put("bitmapsAllocated", allocated.get());
+		result.put("bitmapsReused", reused.get());
+		result.put("bitmapsRecycled", recycled.get());
+		synchronized (this) {
+			result.put("poolBytes", bytes);
+		}
+		result.put("poolMaxBytes", maxBytes);
+		return result;
+	}
+
+	void resetStats() {
+		allocated.set(0);
+		reused.set(0);
+		recycled.set(0);
+	}
+
+	private synchronized Bitmap take(int byteCount) {
+		final Iterator<Map.Entry<Integer, ArrayDeque<Bitmap>>> buckets =
+				this.buckets.tailMap(byteCount, true).entrySet().iterator();
+		while (buckets.hasNext()) {
+			final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.next();
+			if (entry.getKey() > (long) byteCount * MAX_WASTE_FACTOR) break;
+			final Bitmap bitmap = entry.getValue().poll();
+			if (entry.getValue().isEmpty()) buckets.remove();
+			if (bitmap != null) {
+				bytes -= entry.getKey();
+				if (!bitmap.isRecycled()) return bitmap;
+			}
+		}
+		return null;
+	}
+
+	private void evictLargest() {
+		final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.lastEntry();
+		final Bitmap bitmap = entry.getValue().poll();
+		if (entry.getValue().isEmpty()) buckets.remove(entry.getKey());
+		bytes -= entry.getKey();
+		if (bitmap != null) {
+			bitmap.recycle();
+			recycled.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.domax.cordova;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transform and encode stages of image pipeline.
+ * <p>
+ * Scale and rotation are combined into one matrix and drawn in a single pass into a pooled bitmap,
+ * and encoding goes into a per-thread buffer that is pre-sized by image size and reused between calls.
+ */
+final class BitmapTransform {
+
+	/**
+	 * Encode buffers larger than that are not retained between calls.
+	 */
+	private static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+	private static final int MIN_BUFFER = 16 * 1024;
+
+	private static final ThreadLocal<EncodeBuffer> BUFFER = new ThreadLocal<>();
+
+	private static final AtomicLong transforms = new AtomicLong();
+	private static final AtomicLong encodes = new AtomicLong();
+	private static final AtomicLong bufferAllocations = new AtomicLong();
+
+	private BitmapTransform() {
+	}
+
+	/**
+	 * Scales given bitmap and rotates it clockwise by given degrees in a single pass.
+	 * Source bitmap is left intact, so it's up to caller to put it back to the pool.
+	 *
+	 * @return a pooled bitmap with the result, or the source itself if no transform is needed.
+	 */
+	static Bitmap scaleRotate(BitmapPool pool, Bitmap source, double scale, int orientation) {
+		final int width = Math.max((int) Math.round(source.getWidth() * scale), 1);
+		final int height = Math.max((int) Math.round(source.getHeight() * scale), 1);
+		final int degrees = ((orientation % 360) + 360) % 360;
+		if (width == source.getWidth() && height == source.getHeight() && degrees == 0) return source;
+
+		final Matrix matrix = new Matrix();
+		matrix.setScale((float) width / source.getWidth(), (float) height / source.getHeight());
+		matrix.postRotate(degrees);
+		final RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+		matrix.mapRect(bounds);
+		matrix.postTranslate(-bounds.left, -bounds.top);
+
+		final boolean swap = degrees == 90 || degrees == 270;
+		final Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+		final Bitmap target = pool.get(swap ? height : width, swap ? width : height, config);
+		new Canvas(target).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+		transforms.incrementAndGet();
+		return target;
+	}
+
+	/**
+	 * Encodes given bitmap through a reusable per-thread buffer.
+	 *
+	 * @return encoded data.
+	 */
+	static byte[] encode(Bitmap bitmap, Bitmap.CompressFormat format, int quality) {
+		final int estimate = Math.min(Math.max(bitmap.getWidth() * bitmap.getHeight(), MIN_BUFFER), MAX_RETAINED_BUFFER);
+		EncodeBuffer buffer = BUFFER.get();
+		if (buffer == null || buffer.capacity() < estimate) {
+			buffer = new EncodeBuffer(estimate);
+			bufferAllocations.incrementAndGet();
+		}
+		buffer.reset();
+		final int capacity = buffer.capacity();
+		bitmap.compress(format, quality, buffer);
+		if (buffer.capacity() != capacity) bufferAllocations.incrementAndGet();
+		encodes.incrementAndGet();
+		BUFFER.set(buffer.capacity() <= MAX_RETAINED_BUFFER ? buffer : null);
+		return buffer.toByteArray();
+	}
+
+	static void stats(JSONObject result) throws JSONException {
+		result.put("transforms", transforms.get());
+		result.put("encodes", encodes.get());
+		result.put("bufferAllocations", bufferAllocations.get());
+	}
+
+	static void resetStats() {
+		transforms.set(0);
+		encodes.set(0);
+		bufferAllocations.set(0);
+	}
+
+	private static final class EncodeBuffer extends ByteArrayOutputStream {
+		EncodeBuffer(int size) {
+			super(size);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.domax.cordova;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Output format of encoded images: JPEG, lossy or lossless WebP, or PNG, with quality and an optional size budget.
+ * <p>
+ * With a budget, lossy formats are encoded at the requested quality first, and if the result doesn't fit,
+ * the highest quality that fits is searched by bisection, down to {@link #MIN_QUALITY}; if even that doesn't fit,
+ * the smallest result is returned. Lossless formats have nothing to trade for size, so the budget doesn't apply to them.
+ */
+final class ImageEncoding {
+
+	static final String F_JPEG = "jpeg";
+	static final String F_WEBP = "webp";
+	static final String F_WEBP_LOSSLESS = "webpLossless";
+	static final String F_PNG = "png";
+
+	static final String E_FORMAT = "Unsupported image format: ";
+
+	/**
+	 * The lowest quality that size budget may push encoding down to.
+	 */
+	private static final int MIN_QUALITY = 10;
+
+	final String format;
+	final int quality;
+	final int targetBytes;
+
+	/**
+	 * @param format      one of {@code F_*} formats, or {@code null} for JPEG.
+	 * @param quality     a quality of lossy formats from {@code 1} to {@code 100}.
+	 * @param targetBytes a maximal size of encoded image, {@code 0} or less means no limit.
+	 * @throws IllegalArgumentException if format isn't supported.
+	 */
+	ImageEncoding(String format, int quality, int targetBytes) {
+		this.format = format != null && !format.isEmpty() ? format : F_JPEG;
+		switch (this.format) {
+			case F_JPEG:
+			case F_WEBP:
+			case F_WEBP_LOSSLESS:
+			case F_PNG:
+				break;
+			default:
+				throw new IllegalArgumentException(E_FORMAT + format);
+		}
+		this.quality = Math.min(Math.max(quality, 1), 100);
+		this.targetBytes = isLossy() ? Math.max(targetBytes, 0) : 0;
+	}
+
+	/**
+	 * Parses an encoding made by {@link #key()}.
+	 */
+	static ImageEncoding fromKey(String key, int quality) {
+		final int dash = key.indexOf('-');
+		if (dash < 0) return new ImageEncoding(key, quality, 0);
+		try {
+			return new ImageEncoding(key.substring(0, dash), quality, Integer.parseInt(key.substring(dash + 1)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(E_FORMAT + key);
+		}
+	}
+
+	/**
+	 * @return format and size budget, made of safe characters only, for cache keys and URLs.
+	 */
+	String key() {
+		return targetBytes > 0 ? format + '-' + targetBytes : format;
+	}
+
+	boolean isLossy() {
+		return F_JPEG.equals(format) || F_WEBP.equals(format);
+	}
+
+	String mimeType() {
+		switch (format) {
+			case F_WEBP:
+			case F_WEBP_LOSSLESS:
+				return "image/webp";
+			case F_PNG:
+				return "image/png";
+			default:
+				return "image/jpeg";
+		}
+	}
+
+	String dataUrlPrefix() {
+		return "data:" + mimeType() + ";base64,";
+	}
+
+	/**
+	 * @return whether an original image of given type may be passed as is instead of this encoding,
+	 * when it doesn't need to be transformed and fits into size budget.
+	 */
+	boolean accepts(String mimeType) {
+		// Lossless WebP originals are not told from lossy ones without parsing them
+		return (F_JPEG.equals(format) || F_PNG.equals(format)) && mimeType().equalsIgnoreCase(mimeType);
+	}
+
+	byte[] encode(Bitmap bitmap) {
+		byte[] data = encode(bitmap, quality);
+		if (targetBytes <= 0 || data.length <= targetBytes || quality <= MIN_QUALITY) return data;
+		// Bisect qualities below the requested one, keeping the best result that fits, or the smallest one
+		int low = MIN_QUALITY;
+		int high = quality - 1;
+		byte[] best = null;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final byte[] candidate = encode(bitmap, mid);
+			if (candidate.length <= targetBytes) {
+				best = candidate;
+				low = mid + 1;
+			} else {
+				if (candidate.length < data.length) data = candidate;
+				high = mid - 1;
+			}
+		}
+		return best != null ? best : data;
+	}
+
+	private byte[] encode(Bitmap bitmap, int quality) {
+		switch (format) {
+			case F_WEBP:
+				// Before Android R, WebP of quality 100 is lossless
+				return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+						? BitmapTransform.encode(bitmap, Bitmap.CompressFormat.WEBP_LOSSY, quality)
+						: BitmapTransform.encode(bitmap, webp(), Math.min(quality, 99));
+			case F_WEBP_LOSSLESS:
+				return BitmapTransform.encode(bitmap, Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+						? Bitmap.CompressFormat.WEBP_LOSSLESS : webp(), 100);
+			case F_PNG:
+				return BitmapTransform.encode(bitmap, Bitmap.CompressFormat.PNG, 100);
+			default:
+				return BitmapTransform.encode(bitmap, Bitmap.CompressFormat.JPEG, quality);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static Bitmap.CompressFormat webp() {
+		return Bitmap.CompressFormat.WEBP;
+	}
+}
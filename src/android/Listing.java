@@ -0,0 +1,114 @@
+package com.domax.cordova;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+
+/**
+ * State of a running listing: its callback, cancellation flag and flow control of the bundles it sends.
+ * <p>
+ * If listing is created with positive amount of {@code credits}, client has to grant a credit per each bundle
+ * it consumed, and producer blocks in {@link #acquire()} as soon as all the granted credits are spent.
+ * In adaptive mode the bundle size doubles each time a credit was already available, i.e. client keeps up,
+ * and halves each time producer had to wait for client, staying within {@code [limit, maxLimit]} range.
+ */
+final class Listing {
+
+	private final String id;
+	private final CallbackContext callbackContext;
+	private final boolean credited;
+	private final boolean adaptive;
+	private final int minBatch;
+	private final int maxBatch;
+	private final int interval;
+
+	private int credits;
+	private int batchSize;
+	private boolean cancelled;
+
+	/**
+	 * @param id              a request ID that client uses to address this listing.
+	 * @param callbackContext a callback to send bundles to.
+	 * @param limit           a bundle size, or {@code 0} if listing is sent at once.
+	 * @param credits         an initial amount of bundles client accepts without acknowledge,
+	 *                        or {@code 0} to disable flow control.
+	 * @param adaptive        whether to adapt bundle size to the pace of client.
+	 * @param maxLimit        a maximal bundle size in adaptive mode.
+	 * @param interval        a delay in millis after each bundle if flow control is disabled.
+	 */
+	Listing(String id, CallbackContext callbackContext, int limit, int credits, boolean adaptive, int maxLimit,
+			int interval) {
+		this.id = id;
+		this.callbackContext = callbackContext;
+		this.credited = credits > 0;
+		this.credits = Math.max(credits, 0);
+		this.adaptive = credited && adaptive && limit > 0;
+		this.minBatch = limit;
+		this.maxBatch = Math.max(limit, maxLimit);
+		this.batchSize = limit;
+		this.interval = interval < 0 ? 30 : interval;
+	}
+
+	String getId() {
+		return id;
+	}
+
+	CallbackContext getCallbackContext() {
+		return callbackContext;
+	}
+
+	synchronized int getBatchSize() {
+		return batchSize;
+	}
+
+	synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	synchronized void cancel() {
+		cancelled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Adds credits granted by client and wakes up the producer waiting for them.
+	 */
+	synchronized void grant(int amount) {
+		if (amount <= 0) return;
+		credits += amount;
+		notifyAll();
+	}
+
+	/**
+	 * Takes a credit for the next bundle, blocking until client grants one.
+	 *
+	 * @return {@code false} if listing was cancelled meanwhile.
+	 */
+	synchronized boolean acquire() throws InterruptedException {
+		if (!credited) return !cancelled;
+		final boolean keptUp = credits > 0;
+		while (credits <= 0 && !cancelled) wait();
+		if (cancelled) return false;
+		--credits;
+		if (adaptive) {
+			if (keptUp) batchSize = Math.min(batchSize * 2, maxBatch);
+			else batchSize = Math.max(batchSize / 2, minBatch);
+		}
+		return true;
+	}
+
+	/**
+	 * Sends given bundle keeping the callback, after taking a credit for it, see {@link #acquire()}.
+	 * Without flow control it waits the fixed interval after sending instead.
+	 *
+	 * @return {@code false} if listing was cancelled meanwhile, so that bundle wasn't sent.
+	 */
+	boolean send(JSONArray bundle) throws InterruptedException {
+		if (!acquire()) return false;
+		final PluginResult result = new PluginResult(PluginResult.Status.OK, bundle);
+		result.setKeepCallback(true);
+		callbackContext.sendPluginResult(result);
+		if (!credited) Thread.sleep(interval);
+		return true;
+	}
+}
@@ -0,0 +1,105 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates media items into their collections (buckets) in a single pass over a cursor of {@link #PROJECTION}
+ * sorted by {@link #ORDER}, counting items and bytes of each collection along with its cover, which is the newest item.
+ */
+final class MediaBuckets {
+
+	static final String P_ID = "id";
+	static final String P_NAME = "name";
+	static final String P_COUNT = "count";
+	static final String P_COVER = "coverId";
+	static final String P_BYTES = "size";
+
+	private static final String _ID = MediaStore.MediaColumns._ID;
+	private static final String BUCKET_ID = MediaStore.MediaColumns.BUCKET_ID;
+	private static final String BUCKET_DISPLAY_NAME = MediaStore.MediaColumns.BUCKET_DISPLAY_NAME;
+	private static final String SIZE = MediaStore.MediaColumns.SIZE;
+
+	@SuppressWarnings("MismatchedReadAndWriteOfArray")
+	static final String[] PROJECTION = new String[]{_ID, BUCKET_ID, BUCKET_DISPLAY_NAME, SIZE};
+
+	static final String ORDER = MediaStore.MediaColumns.DATE_TAKEN + " DESC";
+
+	private MediaBuckets() {
+	}
+
+	/**
+	 * @return collections sorted by their names, the unnamed ones last.
+	 */
+	static JSONArray aggregate(Cursor cursor) throws JSONException {
+		// Rows come newest first, so the first row seen for each bucket is its cover.
+		final Map<String, Bucket> buckets = new HashMap<>();
+		final List<Bucket> ordered = new ArrayList<>();
+		if (cursor.moveToFirst()) {
+			final int idxBucketId = cursor.getColumnIndex(BUCKET_ID);
+			final int idxBucketName = cursor.getColumnIndex(BUCKET_DISPLAY_NAME);
+			final int idxId = cursor.getColumnIndex(_ID);
+			final int idxSize = cursor.getColumnIndex(SIZE);
+			do {
+				final String bucketId = cursor.getString(idxBucketId);
+				Bucket bucket = buckets.get(bucketId);
+				if (bucket == null) {
+					bucket = new Bucket(bucketId, cursor.getString(idxBucketName), cursor.getString(idxId));
+					buckets.put(bucketId, bucket);
+					ordered.add(bucket);
+				}
+				++bucket.count;
+				bucket.size += cursor.getLong(idxSize);
+			} while (cursor.moveToNext());
+		}
+		Collections.sort(ordered, Bucket.BY_NAME);
+		final JSONArray result = new JSONArray();
+		for (Bucket bucket : ordered) {
+			final JSONObject item = new JSONObject();
+			item.put(P_ID, bucket.id);
+			item.put(P_NAME, bucket.name);
+			item.put(P_COUNT, bucket.count);
+			item.put(P_COVER, bucket.coverId);
+			item.put(P_BYTES, bucket.size);
+			result.put(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Aggregated state of a single collection while scanning.
+	 */
+	private static final class Bucket {
+		static final Comparator<Bucket> BY_NAME = new Comparator<Bucket>() {
+			@Override
+			public int compare(Bucket a, Bucket b) {
+				if (a.name == null) return b.name == null ? 0 : 1;
+				if (b.name == null) return -1;
+				return a.name.compareToIgnoreCase(b.name);
+			}
+		};
+
+		final String id;
+		final String name;
+		final String coverId;
+		int count;
+		long size;
+
+		Bucket(String id, String name, String coverId) {
+			this.id = id;
+			this.name = name;
+			this.coverId = coverId;
+		}
+	}
+}
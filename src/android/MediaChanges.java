@@ -0,0 +1,299 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import org.json.JSONArray;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tracks changes of media library between calls, by opaque tokens that clients keep.
+ * <p>
+ * Added and modified items are found by MediaStore generation numbers since Android R,
+ * and by modification and insertion dates before that. Deleted items are found by comparing
+ * a snapshot of all the image and video IDs, persisted by the call that issued the token, with the current ones.
+ * Snapshots are stored as delta-encoded varints of sorted IDs. The two latest of them are kept,
+ * as well as the one followed up last time, so that a token stays valid until a call that replaces it completes.
+ * If a token can't be followed up, the delta is a reset, which reports every item as added.
+ */
+final class MediaChanges {
+
+	private static final String TAG = MediaChanges.class.getSimpleName();
+	private static final String EXT = ".ids";
+	private static final String MODE_GENERATION = "g";
+	private static final String MODE_DATE = "d";
+	private static final int KEEP_SNAPSHOTS = 2;
+
+	/**
+	 * Selection of photos and videos in MediaStore files table.
+	 */
+	static final String SEL_MEDIA = MediaStore.Files.FileColumns.MEDIA_TYPE + " IN ("
+			+ MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE + "," + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO + ")";
+
+	@SuppressWarnings("MismatchedReadAndWriteOfArray")
+	private static final String[] PRJ_IDS = new String[]{MediaStore.MediaColumns._ID};
+
+	private final File dir;
+
+	/**
+	 * @param dir a directory for ID snapshots.
+	 */
+	MediaChanges(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Takes a new snapshot of media library and compares it with the one of given token.
+	 *
+	 * @param token a token of previous delta, or {@code null} to start from scratch.
+	 * @return a delta since given token.
+	 */
+	synchronized Delta start(Context context, String token) throws IOException {
+		final ContentResolver resolver = context.getContentResolver();
+		final Token since = Token.parse(token);
+		// Mark is taken before the queries, so that items changed meanwhile are reported once more next time
+		final Token now = Token.current(context, lastSeq() + 1);
+		final long[] ids = queryIds(resolver);
+		final long[] previous = since != null && since.follows(now) ? read(since.seq) : null;
+		write(now.seq, ids, since != null ? since.seq : -1);
+		return new Delta(previous != null ? since : null, now, previous, ids);
+	}
+
+	private static long[] queryIds(ContentResolver resolver) {
+		try (Cursor cursor = resolver.query(MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL),
+				PRJ_IDS, SEL_MEDIA, null, MediaStore.MediaColumns._ID)) {
+			if (cursor == null) throw new IllegalStateException("MediaStore query failed");
+			long[] ids = new long[cursor.getCount()];
+			int count = 0;
+			while (cursor.moveToNext()) {
+				if (count == ids.length) ids = Arrays.copyOf(ids, count * 2 + 16);
+				ids[count++] = cursor.getLong(0);
+			}
+			ids = Arrays.copyOf(ids, count);
+			// Providers are not obliged to honor sort order
+			Arrays.sort(ids);
+			return ids;
+		}
+	}
+
+	private long lastSeq() {
+		long last = 0;
+		final File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files) last = Math.max(last, seqOf(file));
+		return last;
+	}
+
+	private static long seqOf(File file) {
+		final String name = file.getName();
+		if (!name.endsWith(EXT)) return -1;
+		try {
+			return Long.parseLong(name.substring(0, name.length() - EXT.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return snapshot of given sequence number, or {@code null} if there's no such one.
+	 */
+	private long[] read(long seq) {
+		final File file = new File(dir, seq + EXT);
+		if (!file.isFile()) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			final long[] ids = new long[in.readInt()];
+			long id = 0;
+			for (int i = 0; i < ids.length; ++i) ids[i] = id += readVarLong(in);
+			return ids;
+		} catch (IOException e) {
+			Log.w(TAG, e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes snapshot of given sequence number and deletes the outdated ones, except the one to keep.
+	 */
+	private void write(long seq, long[] ids, long keep) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+		final File file = new File(dir, seq + EXT);
+		final File tmp = new File(dir, seq + EXT + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(ids.length);
+			long id = 0;
+			for (long next : ids) {
+				writeVarLong(out, next - id);
+				id = next;
+			}
+		}
+		if (!tmp.renameTo(file)) {
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+		}
+		final File[] files = dir.listFiles();
+		if (files != null)
+			for (File old : files)
+				if (seqOf(old) <= seq - KEEP_SNAPSHOTS && seqOf(old) != keep && !old.delete())
+					Log.w(TAG, "Cannot delete " + old);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new EOFException("Malformed snapshot");
+	}
+
+	/**
+	 * Position in media library history: a way changes are detected, a mark to detect them since,
+	 * and a sequence number of the ID snapshot taken at that moment.
+	 */
+	private static final class Token {
+		final String mode;
+		final long mark;
+		final long seq;
+		final String version;
+
+		Token(String mode, long mark, long seq, String version) {
+			this.mode = mode;
+			this.mark = mark;
+			this.seq = seq;
+			this.version = version != null ? version : "";
+		}
+
+		/**
+		 * Since Android R all external volumes share one database, and so one generation counter,
+		 * whose numbers are comparable only as long as its version doesn't change.
+		 */
+		static Token current(Context context, long seq) {
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
+				return new Token(MODE_GENERATION,
+						MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY), seq,
+						MediaStore.getVersion(context, MediaStore.VOLUME_EXTERNAL_PRIMARY));
+			// Dates are in seconds, so the current one is checked again next time
+			return new Token(MODE_DATE, System.currentTimeMillis() / 1000, seq, null);
+		}
+
+		/**
+		 * @return parsed token, or {@code null} if it's empty or malformed.
+		 */
+		static Token parse(String token) {
+			if (token == null || token.isEmpty()) return null;
+			final String[] parts = token.split(":", 4);
+			if (parts.length < 4) return null;
+			try {
+				return new Token(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return whether changes since this token can be detected at the moment of given one.
+		 */
+		boolean follows(Token now) {
+			return mode.equals(now.mode) && version.equals(now.version) && seq < now.seq;
+		}
+
+		@Override
+		public String toString() {
+			return mode + ':' + mark + ':' + seq + ':' + version;
+		}
+	}
+
+	/**
+	 * Changes between two tokens, and a way to query items changed in between.
+	 */
+	static final class Delta {
+		private final Token since;
+		private final Token now;
+		private final long[] previous;
+		private final long[] current;
+
+		private Delta(Token since, Token now, long[] previous, long[] current) {
+			this.since = since;
+			this.now = now;
+			this.previous = previous;
+			this.current = current;
+		}
+
+		/**
+		 * @return a token to pass to the next call.
+		 */
+		String getToken() {
+			return now.toString();
+		}
+
+		/**
+		 * @return whether previous token couldn't be followed up, so that all the items are reported as added
+		 * and client has to drop whatever it knows about items not reported.
+		 */
+		boolean isReset() {
+			return since == null;
+		}
+
+		/**
+		 * @return selection of items added or modified since previous token, or {@code null} to select all of them.
+		 */
+		String selection() {
+			if (since == null) return null;
+			if (MODE_GENERATION.equals(since.mode))
+				return MediaStore.MediaColumns.GENERATION_MODIFIED + ">?";
+			return "(" + MediaStore.MediaColumns.DATE_MODIFIED + ">=? OR "
+					+ MediaStore.MediaColumns.DATE_ADDED + ">=?)";
+		}
+
+		String[] selectionArgs() {
+			if (since == null) return null;
+			final String mark = String.valueOf(since.mark);
+			return MODE_GENERATION.equals(since.mode) ? new String[]{mark} : new String[]{mark, mark};
+		}
+
+		/**
+		 * @return whether item of given ID wasn't there at the moment of previous token.
+		 */
+		boolean isAdded(long id) {
+			return previous == null || Arrays.binarySearch(previous, id) < 0;
+		}
+
+		/**
+		 * @return IDs of items deleted since previous token.
+		 */
+		JSONArray deleted() {
+			final JSONArray result = new JSONArray();
+			if (previous == null) return result;
+			int j = 0;
+			for (long id : previous) {
+				while (j < current.length && current[j] < id) ++j;
+				if (j >= current.length || current[j] != id) result.put(String.valueOf(id));
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.domax.cordova;
+
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compiles filter options of listings into SQL selection with bound arguments.
+ * <p>
+ * Predicates are written in terms of MediaStore column names, so that the same filter applies
+ * both to MediaStore queries and to {@link MediaIndex}, whose columns are named alike.
+ * Dimensions are compared as displayed, i.e. with width and height swapped for photos rotated by 90 or 270 degrees,
+ * just like {@link MediaRowMapper} reports them. Filters are validated as a whole when compiled,
+ * so that malformed or contradicting ones fail instead of silently matching nothing.
+ */
+final class MediaFilter {
+
+	static final String F_FROM = "from";
+	static final String F_TO = "to";
+	static final String F_HAS_LOCATION = "hasLocation";
+	static final String F_BBOX = "bbox";
+	static final String F_MIN_WIDTH = "minWidth";
+	static final String F_MAX_WIDTH = "maxWidth";
+	static final String F_MIN_HEIGHT = "minHeight";
+	static final String F_MAX_HEIGHT = "maxHeight";
+	static final String F_SHAPE = "shape";
+	static final String F_MIN_SIZE = "minSize";
+	static final String F_MAX_SIZE = "maxSize";
+	static final String F_MIME_TYPES = "mimeTypes";
+	static final String F_COLLECTION_IDS = "collectionIds";
+	static final String F_EXCLUDE_COLLECTION_IDS = "excludeCollectionIds";
+
+	private static final List<String> KEYS = Arrays.asList(F_FROM, F_TO, F_HAS_LOCATION, F_BBOX,
+			F_MIN_WIDTH, F_MAX_WIDTH, F_MIN_HEIGHT, F_MAX_HEIGHT, F_SHAPE, F_MIN_SIZE, F_MAX_SIZE,
+			F_MIME_TYPES, F_COLLECTION_IDS, F_EXCLUDE_COLLECTION_IDS);
+
+	static final String SHAPE_LANDSCAPE = "landscape";
+	static final String SHAPE_PORTRAIT = "portrait";
+	static final String SHAPE_SQUARE = "square";
+
+	static final String E_FILTER = "Unsupported filter: ";
+	static final String E_FILTER_VALUE = "Malformed filter value: ";
+	static final String E_FILTER_RANGE = "Empty filter range: ";
+
+	private static final String DATE_TAKEN = MediaStore.MediaColumns.DATE_TAKEN;
+	private static final String LATITUDE = MediaStore.Images.ImageColumns.LATITUDE;
+	private static final String LONGITUDE = MediaStore.Images.ImageColumns.LONGITUDE;
+	private static final String SIZE = MediaStore.MediaColumns.SIZE;
+	private static final String MIME_TYPE = MediaStore.MediaColumns.MIME_TYPE;
+	private static final String BUCKET_ID = MediaStore.MediaColumns.BUCKET_ID;
+
+	private final List<String> clauses = new ArrayList<>();
+	private final List<String> args = new ArrayList<>();
+
+	/**
+	 * @param filter      filter options, may be {@code null}.
+	 * @param orientation whether items have orientation column, so that their dimensions may be swapped.
+	 * @throws IllegalArgumentException if filter is malformed or not supported.
+	 */
+	MediaFilter(JSONObject filter, boolean orientation) {
+		if (filter == null) return;
+		for (Iterator<String> it = filter.keys(); it.hasNext(); ) {
+			final String key = it.next();
+			if (!KEYS.contains(key)) throw new IllegalArgumentException(E_FILTER + key);
+		}
+		final String width = orientation ? displayed(MediaStore.MediaColumns.WIDTH, MediaStore.MediaColumns.HEIGHT)
+				: MediaStore.MediaColumns.WIDTH;
+		final String height = orientation ? displayed(MediaStore.MediaColumns.HEIGHT, MediaStore.MediaColumns.WIDTH)
+				: MediaStore.MediaColumns.HEIGHT;
+
+		range(filter, F_FROM, F_TO, DATE_TAKEN);
+		range(filter, F_MIN_WIDTH, F_MAX_WIDTH, width);
+		range(filter, F_MIN_HEIGHT, F_MAX_HEIGHT, height);
+		range(filter, F_MIN_SIZE, F_MAX_SIZE, SIZE);
+
+		if (filter.has(F_HAS_LOCATION)) {
+			final Object value = filter.opt(F_HAS_LOCATION);
+			if (!(value instanceof Boolean)) throw new IllegalArgumentException(E_FILTER_VALUE + F_HAS_LOCATION);
+			final String located = "(" + LATITUDE + " IS NOT NULL AND " + LONGITUDE + " IS NOT NULL AND ("
+					+ LATITUDE + "!=0 OR " + LONGITUDE + "!=0))";
+			clauses.add((Boolean) value ? located : "NOT " + located);
+		}
+
+		if (filter.has(F_BBOX)) {
+			// [south, west, north, east]; a box that crosses antimeridian has west > east
+			final JSONArray box = filter.optJSONArray(F_BBOX);
+			if (box == null || box.length() != 4) throw new IllegalArgumentException(E_FILTER_VALUE + F_BBOX);
+			final double[] b = new double[4];
+			for (int i = 0; i < 4; ++i) {
+				final Object value = box.opt(i);
+				if (!(value instanceof Number)) throw new IllegalArgumentException(E_FILTER_VALUE + F_BBOX);
+				b[i] = ((Number) value).doubleValue();
+			}
+			if (b[0] < -90 || b[2] > 90 || b[0] > b[2] || Math.abs(b[1]) > 180 || Math.abs(b[3]) > 180)
+				throw new IllegalArgumentException(E_FILTER_VALUE + F_BBOX);
+			clauses.add(LATITUDE + " BETWEEN ? AND ?");
+			args.add(String.valueOf(b[0]));
+			args.add(String.valueOf(b[2]));
+			clauses.add(b[1] <= b[3]
+					? LONGITUDE + " BETWEEN ? AND ?"
+					: "(" + LONGITUDE + ">=? OR " + LONGITUDE + "<=?)");
+			args.add(String.valueOf(b[1]));
+			args.add(String.valueOf(b[3]));
+		}
+
+		if (filter.has(F_SHAPE)) {
+			final String shape = filter.optString(F_SHAPE);
+			switch (shape) {
+				case SHAPE_LANDSCAPE:
+					clauses.add(width + ">" + height);
+					break;
+				case SHAPE_PORTRAIT:
+					clauses.add(width + "<" + height);
+					break;
+				case SHAPE_SQUARE:
+					clauses.add(width + "=" + height);
+					break;
+				default:
+					throw new IllegalArgumentException(E_FILTER_VALUE + F_SHAPE);
+			}
+		}
+
+		if (filter.has(F_MIME_TYPES)) {
+			final List<String> mimeTypes = strings(filter, F_MIME_TYPES);
+			if (mimeTypes.isEmpty()) throw new IllegalArgumentException(E_FILTER_RANGE + F_MIME_TYPES);
+			final StringBuilder clause = new StringBuilder("(");
+			for (String mimeType : mimeTypes) {
+				if (clause.length() > 1) clause.append(" OR ");
+				// "image/*" matches all images
+				if (mimeType.endsWith("/*")) {
+					clause.append(MIME_TYPE).append(" LIKE ?");
+					args.add(mimeType.substring(0, mimeType.length() - 1) + "%");
+				} else {
+					clause.append(MIME_TYPE).append("=?");
+					args.add(mimeType);
+				}
+			}
+			clauses.add(clause.append(')').toString());
+		}
+
+		if (filter.has(F_COLLECTION_IDS)) {
+			final List<String> ids = strings(filter, F_COLLECTION_IDS);
+			if (ids.isEmpty()) throw new IllegalArgumentException(E_FILTER_RANGE + F_COLLECTION_IDS);
+			clauses.add(BUCKET_ID + " IN (" + placeholders(ids.size()) + ")");
+			args.addAll(ids);
+		}
+		if (filter.has(F_EXCLUDE_COLLECTION_IDS)) {
+			final List<String> ids = strings(filter, F_EXCLUDE_COLLECTION_IDS);
+			if (!ids.isEmpty()) {
+				clauses.add("(" + BUCKET_ID + " IS NULL OR " + BUCKET_ID + " NOT IN (" + placeholders(ids.size()) + "))");
+				args.addAll(ids);
+			}
+		}
+	}
+
+	/**
+	 * Appends compiled predicates to given clauses that are joined with AND, and their arguments.
+	 */
+	void appendTo(List<String> clauses, List<String> args) {
+		clauses.addAll(this.clauses);
+		args.addAll(this.args);
+	}
+
+	/**
+	 * Arguments are bound as text, which SQLite doesn't convert when compared to expressions, hence the casts.
+	 */
+	private void range(JSONObject filter, String minKey, String maxKey, String column) {
+		final Long min = number(filter, minKey);
+		final Long max = number(filter, maxKey);
+		if (min != null && max != null && min > max) throw new IllegalArgumentException(E_FILTER_RANGE + minKey);
+		if (min != null) {
+			clauses.add(column + ">=CAST(? AS INTEGER)");
+			args.add(String.valueOf(min));
+		}
+		if (max != null) {
+			clauses.add(column + "<=CAST(? AS INTEGER)");
+			args.add(String.valueOf(max));
+		}
+	}
+
+	private static Long number(JSONObject filter, String key) {
+		if (!filter.has(key) || filter.isNull(key)) return null;
+		final Object value = filter.opt(key);
+		if (!(value instanceof Number)) throw new IllegalArgumentException(E_FILTER_VALUE + key);
+		final long result = ((Number) value).longValue();
+		if (result < 0) throw new IllegalArgumentException(E_FILTER_VALUE + key);
+		return result;
+	}
+
+	private static List<String> strings(JSONObject filter, String key) {
+		final JSONArray array = filter.optJSONArray(key);
+		if (array == null) throw new IllegalArgumentException(E_FILTER_VALUE + key);
+		final List<String> result = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); ++i) {
+			final Object value = array.opt(i);
+			if (!(value instanceof String) && !(value instanceof Number))
+				throw new IllegalArgumentException(E_FILTER_VALUE + key);
+			result.add(String.valueOf(value));
+		}
+		return result;
+	}
+
+	private static String displayed(String dimension, String swapped) {
+		return "(CASE WHEN " + MediaStore.MediaColumns.ORIENTATION + " IN (90,270) THEN " + swapped
+				+ " ELSE " + dimension + " END)";
+	}
+
+	private static String placeholders(int count) {
+		final StringBuilder result = new StringBuilder();
+		for (int i = 0; i < count; ++i) result.append(i > 0 ? ",?" : "?");
+		return result.toString();
+	}
+}
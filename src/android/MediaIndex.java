@@ -0,0 +1,264 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plugin-owned SQLite index of photo and video metadata, for filtered and sorted queries
+ * that MediaStore can't answer efficiently.
+ * <p>
+ * Columns are named like MediaStore ones, so that {@link MediaFilter} and {@link MediaRowMapper} apply to it as is.
+ * Index is synced incrementally through {@link MediaChanges} before a query, but only if MediaStore notified
+ * of changes since the last sync, so that queries of an unchanged library don't touch MediaStore at all.
+ */
+final class MediaIndex extends SQLiteOpenHelper {
+
+	private static final String DB_NAME = "photos-index.db";
+	private static final int DB_VERSION = 1;
+	private static final String TABLE = "media";
+	private static final String TABLE_META = "meta";
+	private static final String META_TOKEN = "token";
+
+	static final String E_SORT = "Unsupported sort: ";
+
+	private static final String ID = MediaStore.MediaColumns._ID;
+
+	/**
+	 * Indexed columns and their SQLite types.
+	 */
+	private static final String[][] COLUMNS = {
+			{ID, "INTEGER PRIMARY KEY"},
+			{MediaStore.MediaColumns.TITLE, "TEXT"},
+			{MediaStore.MediaColumns.DATE_TAKEN, "INTEGER"},
+			{MediaStore.MediaColumns.DATE_MODIFIED, "INTEGER"},
+			{MediaStore.MediaColumns.MIME_TYPE, "TEXT"},
+			{MediaStore.MediaColumns.WIDTH, "INTEGER"},
+			{MediaStore.MediaColumns.HEIGHT, "INTEGER"},
+			{MediaStore.MediaColumns.ORIENTATION, "INTEGER"},
+			{MediaStore.Images.ImageColumns.LATITUDE, "REAL"},
+			{MediaStore.Images.ImageColumns.LONGITUDE, "REAL"},
+			{MediaStore.MediaColumns.DURATION, "INTEGER"},
+			{MediaStore.MediaColumns.SIZE, "INTEGER"},
+			{MediaStore.MediaColumns.BUCKET_ID, "TEXT"},
+			{MediaStore.MediaColumns.BUCKET_DISPLAY_NAME, "TEXT"},
+	};
+
+	/**
+	 * Sort keys of {@link #orderBy}, and columns they sort by.
+	 */
+	private static final String[][] SORT_KEYS = {
+			{"date", MediaStore.MediaColumns.DATE_TAKEN},
+			{"modified", MediaStore.MediaColumns.DATE_MODIFIED},
+			{"name", MediaStore.MediaColumns.TITLE},
+			{"size", MediaStore.MediaColumns.SIZE},
+			{"width", MediaStore.MediaColumns.WIDTH},
+			{"height", MediaStore.MediaColumns.HEIGHT},
+			{"duration", MediaStore.MediaColumns.DURATION},
+	};
+
+	private final Context context;
+	private final MediaChanges changes;
+	private final ContentObserver observer;
+	private volatile boolean dirty = true;
+
+	/**
+	 * @param changesDir a directory for ID snapshots of the index, apart from the ones of client tokens.
+	 */
+	MediaIndex(Context context, File changesDir) {
+		super(context, DB_NAME, null, DB_VERSION);
+		this.context = context;
+		this.changes = new MediaChanges(changesDir);
+		this.observer = new ContentObserver(null) {
+			@Override
+			public void onChange(boolean selfChange) {
+				dirty = true;
+			}
+
+			@Override
+			public void onChange(boolean selfChange, Uri uri) {
+				dirty = true;
+			}
+		};
+		final ContentResolver resolver = context.getContentResolver();
+		resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+		resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		final StringBuilder sql = new StringBuilder("CREATE TABLE ").append(TABLE).append(" (");
+		for (int i = 0; i < COLUMNS.length; ++i)
+			sql.append(i > 0 ? ", " : "").append(COLUMNS[i][0]).append(' ').append(COLUMNS[i][1]);
+		db.execSQL(sql.append(')').toString());
+		db.execSQL("CREATE INDEX media_date ON " + TABLE + " ("
+				+ MediaStore.MediaColumns.DATE_TAKEN + ", " + ID + ")");
+		db.execSQL("CREATE INDEX media_bucket ON " + TABLE + " ("
+				+ MediaStore.MediaColumns.BUCKET_ID + ", " + MediaStore.MediaColumns.DATE_TAKEN + ")");
+		db.execSQL("CREATE INDEX media_location ON " + TABLE + " ("
+				+ MediaStore.Images.ImageColumns.LATITUDE + ", " + MediaStore.Images.ImageColumns.LONGITUDE + ")");
+		db.execSQL("CREATE INDEX media_size ON " + TABLE + " (" + MediaStore.MediaColumns.SIZE + ")");
+		db.execSQL("CREATE TABLE " + TABLE_META + " (key TEXT PRIMARY KEY, value TEXT)");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// Index is rebuilt from MediaStore anyway
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+		db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+		onCreate(db);
+	}
+
+	@Override
+	public synchronized void close() {
+		context.getContentResolver().unregisterContentObserver(observer);
+		super.close();
+	}
+
+	/**
+	 * Applies changes of media library since the last sync, if MediaStore notified of any.
+	 */
+	synchronized void sync() throws IOException {
+		if (!dirty) return;
+		// Reset before the sync, so that changes that come meanwhile are synced next time
+		dirty = false;
+		try {
+			final SQLiteDatabase db = getWritableDatabase();
+			final MediaChanges.Delta delta = changes.start(context, readToken(db));
+			db.beginTransaction();
+			try {
+				if (delta.isReset()) db.delete(TABLE, null, null);
+				else {
+					final JSONArray deleted = delta.deleted();
+					try (SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE " + ID + "=?")) {
+						for (int i = 0; i < deleted.length(); ++i) {
+							delete.bindString(1, deleted.optString(i));
+							delete.executeUpdateDelete();
+						}
+					}
+				}
+				final StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ").append(TABLE).append(" (");
+				for (int i = 0; i < COLUMNS.length; ++i) sql.append(i > 0 ? ", " : "").append(COLUMNS[i][0]);
+				sql.append(") VALUES (");
+				for (int i = 0; i < COLUMNS.length; ++i) sql.append(i > 0 ? ", ?" : "?");
+				try (SQLiteStatement upsert = db.compileStatement(sql.append(')').toString())) {
+					upsert(upsert, MediaStore.Images.Media.EXTERNAL_CONTENT_URI, delta);
+					upsert(upsert, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, delta);
+				}
+				db.execSQL("INSERT OR REPLACE INTO " + TABLE_META + " (key, value) VALUES (?, ?)",
+						new Object[]{META_TOKEN, delta.getToken()});
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		} catch (IOException | RuntimeException e) {
+			dirty = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Queries the index; caller has to {@link #sync()} it first.
+	 *
+	 * @param filter  a filter of items.
+	 * @param orderBy an order of items, see {@link #orderBy}.
+	 * @param offset  an amount of items to skip.
+	 * @param limit   a maximal amount of items, {@code 0} or less means no limit.
+	 */
+	Cursor query(MediaFilter filter, String orderBy, int offset, int limit) {
+		final List<String> clauses = new ArrayList<>();
+		final List<String> args = new ArrayList<>();
+		filter.appendTo(clauses, args);
+		final StringBuilder selection = new StringBuilder();
+		for (String clause : clauses) {
+			if (selection.length() > 0) selection.append(" AND ");
+			selection.append(clause);
+		}
+		final String[] projection = new String[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; ++i) projection[i] = COLUMNS[i][0];
+		return getReadableDatabase().query(TABLE, projection,
+				selection.length() > 0 ? selection.toString() : null,
+				args.toArray(new String[args.size()]), null, null, orderBy,
+				limit > 0 ? Math.max(offset, 0) + "," + limit : offset > 0 ? offset + ",-1" : null);
+	}
+
+	/**
+	 * Builds ORDER BY clause of sort keys, e.g. {@code "-date"} or {@code ["name", "-size"]},
+	 * where leading minus means descending order. Items with equal keys are ordered by ID, in order of the last key.
+	 *
+	 * @param sort a sort key, an array of them, or {@code null} for the newest items first.
+	 * @throws IllegalArgumentException if a sort key isn't supported.
+	 */
+	static String orderBy(Object sort) {
+		final List<String> keys = new ArrayList<>();
+		if (sort instanceof JSONArray) {
+			final JSONArray array = (JSONArray) sort;
+			for (int i = 0; i < array.length(); ++i) keys.add(array.optString(i));
+		} else if (sort instanceof String) keys.add((String) sort);
+		else if (sort == null) keys.add("-date");
+		else throw new IllegalArgumentException(E_SORT + sort);
+
+		final StringBuilder result = new StringBuilder();
+		boolean descending = false;
+		for (String key : keys) {
+			descending = key.startsWith("-");
+			final String name = descending ? key.substring(1) : key;
+			String column = null;
+			for (String[] sortKey : SORT_KEYS)
+				if (sortKey[0].equals(name)) column = sortKey[1];
+			if (column == null) throw new IllegalArgumentException(E_SORT + key);
+			if (result.length() > 0) result.append(", ");
+			result.append(column).append(descending ? " DESC" : " ASC");
+		}
+		if (result.length() > 0) result.append(", ");
+		return result.append(ID).append(descending ? " DESC" : " ASC").toString();
+	}
+
+	private void upsert(SQLiteStatement upsert, Uri uri, MediaChanges.Delta delta) {
+		final List<String> projection = new ArrayList<>();
+		for (String[] column : COLUMNS)
+			// Videos have no orientation before Android Q, and no columns of images in general
+			if (uri.equals(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+					? !column[0].equals(MediaStore.MediaColumns.DURATION)
+					: !column[0].equals(MediaStore.MediaColumns.ORIENTATION)
+					|| Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+				projection.add(column[0]);
+		try (Cursor cursor = context.getContentResolver().query(uri,
+				projection.toArray(new String[projection.size()]), delta.selection(), delta.selectionArgs(), null)) {
+			if (cursor == null) throw new IllegalStateException("MediaStore query failed: " + uri);
+			final int[] index = new int[COLUMNS.length];
+			for (int i = 0; i < COLUMNS.length; ++i) index[i] = cursor.getColumnIndex(COLUMNS[i][0]);
+			while (cursor.moveToNext()) {
+				upsert.clearBindings();
+				for (int i = 0; i < COLUMNS.length; ++i) {
+					final int idx = index[i];
+					if (idx < 0 || cursor.isNull(idx)) upsert.bindNull(i + 1);
+					else if (COLUMNS[i][1].startsWith("INTEGER")) upsert.bindLong(i + 1, cursor.getLong(idx));
+					else if (COLUMNS[i][1].equals("REAL")) upsert.bindDouble(i + 1, cursor.getDouble(idx));
+					else upsert.bindString(i + 1, cursor.getString(idx));
+				}
+				upsert.executeInsert();
+			}
+		}
+	}
+
+	private static String readToken(SQLiteDatabase db) {
+		try (Cursor cursor = db.rawQuery("SELECT value FROM " + TABLE_META + " WHERE key=?", new String[]{META_TOKEN})) {
+			return cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+		}
+	}
+}
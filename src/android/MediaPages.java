@@ -0,0 +1,121 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.List;
+
+/**
+ * Reads listings of media items in {@link #ORDER_BY_DATE_TAKEN} order: whole, in bundles of a {@link Listing},
+ * or in pages that continue right after the last row of the previous one.
+ * <p>
+ * A page continues by keyset rather than by offset, so that it's sought right away instead of reading all the rows
+ * before it. Its token is opaque to client and encodes taken date and ID of the last row of the previous page.
+ */
+final class MediaPages {
+
+	static final String E_PAGE_TOKEN = "Malformed page continuation token";
+
+	private static final String _ID = MediaStore.MediaColumns._ID;
+	private static final String DATE_TAKEN = MediaStore.MediaColumns.DATE_TAKEN;
+
+	static final String ORDER_BY_DATE_TAKEN = DATE_TAKEN + " DESC, " + _ID + " DESC";
+
+	/**
+	 * Gets rows and bundles of a listing that {@link #read} reads.
+	 */
+	interface Reader {
+		/**
+		 * Called while cursor is at each row that is added to the batch.
+		 */
+		void onRow(Cursor cursor);
+
+		/**
+		 * @return whether to go on reading.
+		 */
+		boolean onBundle(JSONArray bundle) throws InterruptedException;
+	}
+
+	private MediaPages() {
+	}
+
+	/**
+	 * Reads rows into given batch starting with the current one, until listing is cancelled, page is full
+	 * or rows are over.
+	 *
+	 * @param bundled  whether to hand full bundles of {@link Listing#getBatchSize()} items over to reader,
+	 *                 otherwise all the rows are left in the batch.
+	 * @param pageSize a maximal amount of rows to read, or {@code 0} to read all of them.
+	 * @return a token of the next page, or {@code null} if there are no more rows.
+	 */
+	static String read(Cursor cursor, MediaRowMapper.Binding row, MediaRowMapper.Batch batch, Listing listing,
+			boolean bundled, int pageSize, Reader reader) throws JSONException, InterruptedException {
+		int fetched = 0;
+		do {
+			if (listing.isCancelled()) break;
+			batch.add(row);
+			reader.onRow(cursor);
+			if (bundled && batch.length() >= listing.getBatchSize()) {
+				if (!reader.onBundle(batch.drain())) break;
+			}
+			++fetched;
+			if (pageSize > 0 && fetched >= pageSize) {
+				final String token = token(cursor);
+				return cursor.moveToNext() ? token : null;
+			}
+		} while (cursor.moveToNext());
+		return null;
+	}
+
+	/**
+	 * Joins given clauses with AND, appending a seek predicate that continues
+	 * {@link #ORDER_BY_DATE_TAKEN} ordering right after the row encoded in {@code after} token.
+	 * Rows without a taken date sort last, so they follow every dated row.
+	 *
+	 * @return the selection, or {@code null} if there are no clauses.
+	 * @throws IllegalArgumentException if token is malformed.
+	 */
+	static String selection(String after, List<String> clauses, List<String> args) {
+		if (after != null && !after.isEmpty()) {
+			final int sep = after.indexOf(':');
+			if (sep < 0) throw new IllegalArgumentException(E_PAGE_TOKEN);
+			final String ts = after.substring(0, sep);
+			final String id = after.substring(sep + 1);
+			try {
+				if (!ts.isEmpty()) Long.parseLong(ts);
+				Long.parseLong(id);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(E_PAGE_TOKEN);
+			}
+			if (ts.isEmpty()) {
+				clauses.add("(" + DATE_TAKEN + " IS NULL AND " + _ID + "<?)");
+				args.add(id);
+			} else {
+				clauses.add("(" + DATE_TAKEN + "<? OR (" + DATE_TAKEN + "=? AND " + _ID + "<?) OR "
+						+ DATE_TAKEN + " IS NULL)");
+				args.add(ts);
+				args.add(ts);
+				args.add(id);
+			}
+		}
+		if (clauses.isEmpty()) return null;
+		final StringBuilder selection = new StringBuilder();
+		for (String clause : clauses) {
+			if (selection.length() > 0) selection.append(" AND ");
+			selection.append(clause);
+		}
+		return selection.toString();
+	}
+
+	/**
+	 * Builds an opaque continuation token of the current cursor row for {@link #selection}.
+	 */
+	static String token(Cursor cursor) {
+		final int idxTs = cursor.getColumnIndex(DATE_TAKEN);
+		final String ts = cursor.isNull(idxTs) ? "" : String.valueOf(cursor.getLong(idxTs));
+		return ts + ":" + cursor.getLong(cursor.getColumnIndex(_ID));
+	}
+}
@@ -0,0 +1,301 @@
+package com.domax.cordova;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps MediaStore cursor rows to the JSON items returned by listing actions.
+ * <p>
+ * A mapper is declared once by the list of {@link Column}s it exposes, which also gives the query projection.
+ * Column indices are resolved once per cursor by {@link #bind(Cursor)}, so the per-row work is just reads and puts.
+ * Instances are immutable and may be shared between threads; bindings are not.
+ */
+final class MediaRowMapper {
+
+	static final String P_ID = "id";
+	static final String P_NAME = "name";
+	static final String P_WIDTH = "width";
+	static final String P_HEIGHT = "height";
+	static final String P_LAT = "latitude";
+	static final String P_LON = "longitude";
+	static final String P_ORI = "orientation";
+	static final String P_DATE = "date";
+	static final String P_TS = "timestamp";
+	static final String P_TYPE = "contentType";
+	static final String P_DURATION = "duration";
+
+	private static final String T_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZZZZZ";
+
+	/**
+	 * Columns that a mapper may expose, in terms of MediaStore columns they are read from.
+	 */
+	enum Column {
+		ID(MediaStore.MediaColumns._ID),
+		NAME(MediaStore.MediaColumns.TITLE),
+		DATE_TAKEN(MediaStore.MediaColumns.DATE_TAKEN),
+		MIME_TYPE(MediaStore.MediaColumns.MIME_TYPE),
+		WIDTH(MediaStore.MediaColumns.WIDTH),
+		HEIGHT(MediaStore.MediaColumns.HEIGHT),
+		ORIENTATION(MediaStore.MediaColumns.ORIENTATION),
+		LATITUDE(MediaStore.Images.ImageColumns.LATITUDE),
+		LONGITUDE(MediaStore.Images.ImageColumns.LONGITUDE),
+		DURATION(MediaStore.MediaColumns.DURATION);
+
+		final String name;
+
+		Column(String name) {
+			this.name = name;
+		}
+	}
+
+	static final MediaRowMapper PHOTOS = new MediaRowMapper("image/jpeg",
+			Column.ID, Column.NAME, Column.DATE_TAKEN, Column.LATITUDE, Column.LONGITUDE,
+			Column.WIDTH, Column.HEIGHT, Column.ORIENTATION);
+
+	static final MediaRowMapper VIDEOS = new MediaRowMapper("video/mp4",
+			Column.ID, Column.NAME, Column.DATE_TAKEN, Column.LATITUDE, Column.LONGITUDE,
+			Column.WIDTH, Column.HEIGHT, Column.DURATION);
+
+	/**
+	 * Photos and videos at once, told apart by their content types.
+	 */
+	static final MediaRowMapper MEDIA = new MediaRowMapper("application/octet-stream",
+			Column.ID, Column.NAME, Column.DATE_TAKEN, Column.MIME_TYPE, Column.LATITUDE, Column.LONGITUDE,
+			Column.WIDTH, Column.HEIGHT, Column.ORIENTATION, Column.DURATION);
+
+	/**
+	 * SimpleDateFormat is not thread-safe, so each pool thread gets its own instance
+	 * together with reusable buffers to keep formatting allocation-light.
+	 */
+	private static final ThreadLocal<DateFormatter> DATE_FORMATTER = new ThreadLocal<DateFormatter>() {
+		@Override
+		protected DateFormatter initialValue() {
+			return new DateFormatter();
+		}
+	};
+
+	private final String contentType;
+	private final Column[] columns;
+	private final String[] projection;
+
+	/**
+	 * @param contentType content type of items if {@link Column#MIME_TYPE} isn't exposed or is empty.
+	 * @param columns     exposed columns.
+	 */
+	MediaRowMapper(String contentType, Column... columns) {
+		this.contentType = contentType;
+		this.columns = columns;
+		this.projection = new String[columns.length];
+		for (int i = 0; i < columns.length; ++i)
+			this.projection[i] = columns[i].name;
+	}
+
+	/**
+	 * @return MediaStore projection that covers all the exposed columns.
+	 */
+	String[] projection() {
+		return projection.clone();
+	}
+
+	/**
+	 * Resolves column indices of given cursor once, for reading all its rows.
+	 */
+	Binding bind(Cursor cursor) {
+		return new Binding(cursor, true);
+	}
+
+	/**
+	 * @param dates whether to add formatted {@code date} besides {@code timestamp} of items.
+	 */
+	Binding bind(Cursor cursor, boolean dates) {
+		return new Binding(cursor, dates);
+	}
+
+	static String formatDate(long ts) {
+		return DATE_FORMATTER.get().format(ts);
+	}
+
+	/**
+	 * Receiver of item fields.
+	 */
+	private interface Sink {
+		void put(String key, Object value) throws JSONException;
+	}
+
+	final class Binding {
+		private final Cursor cursor;
+		private final boolean dates;
+		private final int[] index = new int[Column.values().length];
+
+		private Binding(Cursor cursor, boolean dates) {
+			this.cursor = cursor;
+			this.dates = dates;
+			for (int i = 0; i < index.length; ++i) index[i] = -1;
+			for (Column column : columns)
+				index[column.ordinal()] = cursor.getColumnIndex(column.name);
+		}
+
+		/**
+		 * @return JSON item of current cursor row.
+		 */
+		JSONObject map() throws JSONException {
+			final JSONObject item = new JSONObject();
+			map(new Sink() {
+				@Override
+				public void put(String key, Object value) throws JSONException {
+					item.put(key, value);
+				}
+			});
+			return item;
+		}
+
+		private void map(Sink item) throws JSONException {
+			final int idxId = index[Column.ID.ordinal()];
+			if (idxId >= 0) item.put(P_ID, cursor.getString(idxId));
+			final int idxName = index[Column.NAME.ordinal()];
+			if (idxName >= 0) item.put(P_NAME, cursor.getString(idxName));
+
+			final int idxMime = index[Column.MIME_TYPE.ordinal()];
+			final String mime = idxMime >= 0 ? cursor.getString(idxMime) : null;
+			item.put(P_TYPE, mime != null && !mime.isEmpty() ? mime : contentType);
+
+			final int idxTs = index[Column.DATE_TAKEN.ordinal()];
+			if (idxTs >= 0) {
+				final long ts = cursor.getLong(idxTs);
+				if (ts != 0) {
+					item.put(P_TS, ts);
+					if (dates) item.put(P_DATE, formatDate(ts));
+				}
+			}
+
+			boolean swap = false;
+			final int idxOri = index[Column.ORIENTATION.ordinal()];
+			if (idxOri >= 0) {
+				final int orientation = cursor.getInt(idxOri);
+				item.put(P_ORI, String.valueOf(orientation));
+				swap = orientation == 90 || orientation == 270;
+			}
+			final int idxWidth = index[Column.WIDTH.ordinal()];
+			final int idxHeight = index[Column.HEIGHT.ordinal()];
+			if (idxWidth >= 0) item.put(swap ? P_HEIGHT : P_WIDTH, cursor.getInt(idxWidth));
+			if (idxHeight >= 0) item.put(swap ? P_WIDTH : P_HEIGHT, cursor.getInt(idxHeight));
+
+			final int idxLat = index[Column.LATITUDE.ordinal()];
+			final int idxLon = index[Column.LONGITUDE.ordinal()];
+			if (idxLat >= 0 && idxLon >= 0) {
+				final double latitude = cursor.getDouble(idxLat);
+				final double longitude = cursor.getDouble(idxLon);
+				if (latitude != 0 || longitude != 0) {
+					item.put(P_LAT, latitude);
+					item.put(P_LON, longitude);
+				}
+			}
+
+			final int idxDuration = index[Column.DURATION.ordinal()];
+			if (idxDuration >= 0 && !cursor.isNull(idxDuration)) item.put(P_DURATION, cursor.getLong(idxDuration));
+		}
+	}
+
+	/**
+	 * Mapped rows to be sent at once, either as an array of items or, in columnar layout,
+	 * as an array of field names followed by an array of values per each field, aligned by rows,
+	 * where missing values are {@code null}. Columnar layout spares repeated keys and per-item objects
+	 * in serialization, transfer and parsing on both sides of the bridge.
+	 */
+	static final class Batch {
+		private final boolean columnar;
+		private JSONArray items;
+		private final Map<String, JSONArray> fields = new LinkedHashMap<>();
+		private int count;
+
+		Batch(boolean columnar) {
+			this.columnar = columnar;
+			this.items = columnar ? null : new JSONArray();
+		}
+
+		int length() {
+			return count;
+		}
+
+		/**
+		 * Maps current row of given binding into this batch.
+		 */
+		void add(Binding row) throws JSONException {
+			if (!columnar) items.put(row.map());
+			else {
+				final int at = count;
+				row.map(new Sink() {
+					@Override
+					public void put(String key, Object value) throws JSONException {
+						field(key).put(at, value);
+					}
+				});
+			}
+			++count;
+		}
+
+		/**
+		 * Sets a field of the last added item.
+		 */
+		void set(String key, Object value) throws JSONException {
+			if (count == 0) return;
+			if (!columnar) items.getJSONObject(count - 1).put(key, value);
+			else field(key).put(count - 1, value);
+		}
+
+		/**
+		 * @return JSON of the rows added so far, which are removed from the batch.
+		 */
+		JSONArray drain() throws JSONException {
+			final JSONArray result;
+			if (!columnar) {
+				result = items;
+				items = new JSONArray();
+			} else {
+				result = new JSONArray();
+				final JSONArray keys = new JSONArray();
+				result.put(keys);
+				for (Map.Entry<String, JSONArray> field : fields.entrySet()) {
+					final JSONArray values = field.getValue();
+					// Pad trailing missing values, so that all the columns are of the same length
+					if (values.length() < count) values.put(count - 1, JSONObject.NULL);
+					keys.put(field.getKey());
+					result.put(values);
+				}
+				fields.clear();
+			}
+			count = 0;
+			return result;
+		}
+
+		private JSONArray field(String key) {
+			JSONArray values = fields.get(key);
+			if (values == null) fields.put(key, values = new JSONArray());
+			return values;
+		}
+	}
+
+	private static final class DateFormatter {
+		private final SimpleDateFormat format = new SimpleDateFormat(T_DATE_FORMAT, Locale.getDefault());
+		private final Date date = new Date();
+		private final StringBuffer buffer = new StringBuffer(32);
+		private final FieldPosition position = new FieldPosition(0);
+
+		String format(long ts) {
+			date.setTime(ts);
+			buffer.setLength(0);
+			return format.format(date, buffer, position).toString();
+		}
+	}
+}
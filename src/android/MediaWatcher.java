@@ -0,0 +1,174 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Observes images and videos of MediaStore and notifies client of their changes.
+ * <p>
+ * Changes are coalesced on a background thread until no more of them come within the debounce window,
+ * or until the maximal wait is over, so that bursts like camera shots or syncs are notified at once.
+ * A notification carries IDs of changed images and videos and IDs of buckets they are in now;
+ * buckets of deleted items are unknown, so these are reported by item IDs only.
+ */
+final class MediaWatcher {
+
+	private static final String TAG = MediaWatcher.class.getSimpleName();
+
+	static final String P_IMAGES = "images";
+	static final String P_VIDEOS = "videos";
+	static final String P_BUCKETS = "buckets";
+	static final String P_RESCAN = "rescan";
+
+	@SuppressWarnings("MismatchedReadAndWriteOfArray")
+	private static final String[] PRJ_BUCKETS =
+			new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.BUCKET_ID};
+
+	private final ContentResolver resolver;
+	private final CallbackContext callbackContext;
+	private final long debounce;
+	private final long maxWait;
+	private final int maxQueryArgs;
+	private final HandlerThread thread;
+	private final Handler handler;
+	private final ContentObserver observer;
+
+	// Accessed on the handler thread only
+	private final Set<String> images = new LinkedHashSet<>();
+	private final Set<String> videos = new LinkedHashSet<>();
+	private boolean rescan;
+	private long firstChange;
+
+	private final Runnable flush = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * @param callbackContext a callback to send notifications to.
+	 * @param debounce        a quiet period in millis that ends a burst of changes.
+	 * @param maxWait         a maximal delay in millis of notification of continuous changes.
+	 * @param maxQueryArgs    a maximal amount of IDs per bucket query.
+	 */
+	MediaWatcher(ContentResolver resolver, CallbackContext callbackContext, long debounce, long maxWait,
+			int maxQueryArgs) {
+		this.resolver = resolver;
+		this.callbackContext = callbackContext;
+		this.debounce = Math.max(debounce, 0);
+		this.maxWait = Math.max(maxWait, this.debounce);
+		this.maxQueryArgs = maxQueryArgs;
+		this.thread = new HandlerThread("Photos-watch", Process.THREAD_PRIORITY_BACKGROUND);
+		this.thread.start();
+		this.handler = new Handler(thread.getLooper());
+		this.observer = new ContentObserver(handler) {
+			@Override
+			public void onChange(boolean selfChange) {
+				onChange(selfChange, null);
+			}
+
+			@Override
+			public void onChange(boolean selfChange, Uri uri) {
+				changed(uri);
+			}
+		};
+	}
+
+	void start() {
+		resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+		resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+	}
+
+	/**
+	 * Stops observing; pending changes are dropped.
+	 */
+	void stop() {
+		resolver.unregisterContentObserver(observer);
+		handler.removeCallbacksAndMessages(null);
+		thread.quitSafely();
+	}
+
+	private void changed(Uri uri) {
+		final String id = uri != null ? uri.getLastPathSegment() : null;
+		final String path = uri != null ? uri.getPath() : null;
+		if (id == null || path == null || !id.matches("\\d+")) rescan = true;
+		else if (path.contains("/video/")) videos.add(id);
+		else if (path.contains("/images/")) images.add(id);
+		else rescan = true;
+
+		final long now = SystemClock.uptimeMillis();
+		if (firstChange == 0) firstChange = now;
+		handler.removeCallbacks(flush);
+		handler.postAtTime(flush, Math.min(now + debounce, firstChange + maxWait));
+	}
+
+	private void flush() {
+		firstChange = 0;
+		if (images.isEmpty() && videos.isEmpty() && !rescan) return;
+		try {
+			final Set<String> buckets = new LinkedHashSet<>();
+			queryBuckets(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, images, buckets);
+			queryBuckets(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, videos, buckets);
+			final JSONObject changes = new JSONObject();
+			changes.put(P_IMAGES, new JSONArray(images));
+			changes.put(P_VIDEOS, new JSONArray(videos));
+			changes.put(P_BUCKETS, new JSONArray(buckets));
+			changes.put(P_RESCAN, rescan);
+			final PluginResult result = new PluginResult(PluginResult.Status.OK, changes);
+			result.setKeepCallback(true);
+			callbackContext.sendPluginResult(result);
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+		} finally {
+			images.clear();
+			videos.clear();
+			rescan = false;
+		}
+	}
+
+	private void queryBuckets(Uri uri, Set<String> ids, Set<String> buckets) {
+		final List<String> chunk = new ArrayList<>(Math.min(ids.size(), maxQueryArgs));
+		for (String id : ids) {
+			chunk.add(id);
+			if (chunk.size() >= maxQueryArgs) {
+				queryBuckets(uri, chunk, buckets);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) queryBuckets(uri, chunk, buckets);
+	}
+
+	private void queryBuckets(Uri uri, List<String> ids, Set<String> buckets) {
+		final StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+		for (int i = 0; i < ids.size(); ++i) selection.append(i > 0 ? ",?" : "?");
+		selection.append(')');
+		try (Cursor cursor = resolver.query(uri, PRJ_BUCKETS, selection.toString(),
+				ids.toArray(new String[ids.size()]), null)) {
+			if (cursor == null) return;
+			final int idxBucket = cursor.getColumnIndex(MediaStore.MediaColumns.BUCKET_ID);
+			while (cursor.moveToNext()) {
+				final String bucket = cursor.getString(idxBucket);
+				if (bucket != null) buckets.add(bucket);
+			}
+		}
+	}
+}
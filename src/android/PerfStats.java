@@ -0,0 +1,240 @@
+package com.domax.cordova;
+
+import android.os.Trace;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-overhead performance counters of plugin actions and of stages of their pipelines.
+ * <p>
+ * Actions are measured through their callbacks, see {@link #track}: latency is the time from the call
+ * to the final result, and bytes out are the sizes of all the results as they are sent over the bridge.
+ * Stages, like MediaStore query or image decode, are measured by {@link #begin}/{@link #end} pairs
+ * on the thread that runs them, and are optionally marked as {@link Trace} sections, so that they show up
+ * in system traces. Latencies are kept in fixed millisecond histograms of atomic counters, so that recording
+ * never locks nor allocates. All methods are thread-safe.
+ */
+final class PerfStats {
+
+	/**
+	 * Upper bounds of histogram buckets in millis; the last bucket is unbounded.
+	 */
+	private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+	private static final String TRACE_PREFIX = "Photos.";
+
+	private final boolean trace;
+	private final ConcurrentHashMap<String, Metric> actions = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Metric> stages = new ConcurrentHashMap<>();
+
+	/**
+	 * @param trace whether to mark actions and stages as {@link Trace} sections.
+	 */
+	PerfStats(boolean trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Wraps callback of given action, so that its results are measured.
+	 */
+	CallbackContext track(String action, CallbackContext callbackContext, CordovaWebView webView) {
+		if (callbackContext instanceof Tracked) return callbackContext;
+		return new Tracked(metric(actions, action), callbackContext.getCallbackId(), webView);
+	}
+
+	/**
+	 * Wraps a task of given action that is queued to a thread pool, so that its queue wait is measured
+	 * and its run is marked as a trace section.
+	 */
+	Runnable queued(final String action, final Runnable task) {
+		final Metric metric = metric(actions, action);
+		final long queuedAt = System.nanoTime();
+		return new Runnable() {
+			@Override
+			public void run() {
+				metric.queueWait.addAndGet(System.nanoTime() - queuedAt);
+				metric.dequeued.incrementAndGet();
+				if (trace) Trace.beginSection(TRACE_PREFIX + action);
+				try {
+					task.run();
+				} finally {
+					if (trace) Trace.endSection();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Counts a cancellation of the action of given callback, if it's tracked.
+	 */
+	void cancelled(CallbackContext callbackContext) {
+		if (callbackContext instanceof Tracked) ((Tracked) callbackContext).metric.cancellations.incrementAndGet();
+	}
+
+	/**
+	 * Starts a stage on the current thread; has to be followed by {@link #end} on the same thread.
+	 *
+	 * @return start time to pass to {@link #end}.
+	 */
+	long begin(String stage) {
+		if (trace) Trace.beginSection(TRACE_PREFIX + stage);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Ends a stage started by {@link #begin}.
+	 *
+	 * @param bytes an amount of bytes the stage processed, if it makes sense.
+	 */
+	void end(String stage, long start, long bytes) {
+		final long elapsed = System.nanoTime() - start;
+		if (trace) Trace.endSection();
+		final Metric metric = metric(stages, stage);
+		metric.record(elapsed);
+		if (bytes > 0) metric.bytes.addAndGet(bytes);
+	}
+
+	JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		final JSONObject actions = new JSONObject();
+		for (Map.Entry<String, Metric> entry : this.actions.entrySet())
+			actions.put(entry.getKey(), entry.getValue().toJSON(true));
+		result.put("actions", actions);
+		final JSONObject stages = new JSONObject();
+		for (Map.Entry<String, Metric> entry : this.stages.entrySet())
+			stages.put(entry.getKey(), entry.getValue().toJSON(false));
+		result.put("stages", stages);
+		final JSONArray bounds = new JSONArray();
+		for (long bound : BOUNDS) bounds.put(bound);
+		result.put("histogramBoundsMs", bounds);
+		return result;
+	}
+
+	void reset() {
+		actions.clear();
+		stages.clear();
+	}
+
+	private static Metric metric(ConcurrentHashMap<String, Metric> metrics, String name) {
+		Metric metric = metrics.get(name);
+		if (metric == null) {
+			metric = new Metric();
+			final Metric existing = metrics.putIfAbsent(name, metric);
+			if (existing != null) metric = existing;
+		}
+		return metric;
+	}
+
+	private static final class Metric {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong cancellations = new AtomicLong();
+		final AtomicLong messages = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+		final AtomicLong queueWait = new AtomicLong();
+		final AtomicLong dequeued = new AtomicLong();
+		final AtomicLongArray histogram = new AtomicLongArray(BOUNDS.length + 1);
+
+		void record(long nanos) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+				// Retry until either the maximum is updated or a larger one is set by another thread
+			}
+			final long millis = nanos / 1000000;
+			int bucket = 0;
+			while (bucket < BOUNDS.length && millis >= BOUNDS[bucket]) ++bucket;
+			histogram.incrementAndGet(bucket);
+		}
+
+		/**
+		 * @return an upper bound of given percentile of latency in millis, or {@code -1} if it's beyond the histogram.
+		 */
+		long percentile(double fraction) {
+			final long total = count.get();
+			if (total == 0) return 0;
+			long seen = 0;
+			for (int i = 0; i < BOUNDS.length; ++i) {
+				seen += histogram.get(i);
+				if (seen >= total * fraction) return BOUNDS[i];
+			}
+			return -1;
+		}
+
+		JSONObject toJSON(boolean action) throws JSONException {
+			final JSONObject result = new JSONObject();
+			final long count = this.count.get();
+			result.put("count", count);
+			result.put("totalMs", totalNanos.get() / 1000000.0);
+			result.put("meanMs", count > 0 ? totalNanos.get() / 1000000.0 / count : 0);
+			result.put("maxMs", maxNanos.get() / 1000000.0);
+			result.put("p50Ms", percentile(0.5));
+			result.put("p95Ms", percentile(0.95));
+			result.put("p99Ms", percentile(0.99));
+			final JSONArray histogram = new JSONArray();
+			for (int i = 0; i < this.histogram.length(); ++i) histogram.put(this.histogram.get(i));
+			result.put("histogram", histogram);
+			result.put("bytes", bytes.get());
+			if (action) {
+				result.put("errors", errors.get());
+				result.put("cancellations", cancellations.get());
+				result.put("messages", messages.get());
+				final long dequeued = this.dequeued.get();
+				result.put("queueWaitMeanMs", dequeued > 0 ? queueWait.get() / 1000000.0 / dequeued : 0);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Callback that measures results of an action on their way to the bridge.
+	 */
+	private static final class Tracked extends CallbackContext {
+		private final Metric metric;
+		private final long start = System.nanoTime();
+
+		Tracked(Metric metric, String callbackId, CordovaWebView webView) {
+			super(callbackId, webView);
+			this.metric = metric;
+		}
+
+		@Override
+		public void sendPluginResult(PluginResult result) {
+			metric.messages.incrementAndGet();
+			metric.bytes.addAndGet(size(result));
+			if (!result.getKeepCallback()) {
+				metric.record(System.nanoTime() - start);
+				if (result.getStatus() != PluginResult.Status.OK.ordinal()
+						&& result.getStatus() != PluginResult.Status.NO_RESULT.ordinal())
+					metric.errors.incrementAndGet();
+			}
+			super.sendPluginResult(result);
+		}
+
+		/**
+		 * @return size of encoded result; results encode their data when they are created, so it's cheap.
+		 */
+		private static long size(PluginResult result) {
+			if (result.getMessageType() == PluginResult.MESSAGE_TYPE_MULTIPART) {
+				long size = 0;
+				for (int i = 0; i < result.getMultipartMessagesSize(); ++i)
+					size += size(result.getMultipartMessage(i));
+				return size;
+			}
+			final String message = result.getStrMessage();
+			return message != null ? message.length() : 0;
+		}
+	}
+}
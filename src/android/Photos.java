@@ -5,11 +5,17 @@ import android.content.ContentResolver;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
-import android.graphics.Matrix;
+import android.webkit.WebResourceResponse;
+
+import androidx.webkit.WebViewAssetLoader;
 
 import org.apache.cordova.*;
 import org.json.JSONArray;
@@ -20,17 +26,20 @@ import static android.provider.MediaStore.Images.Media.*;
 import static android.provider.MediaStore.Images.Thumbnails.MINI_KIND;
 import static android.provider.MediaStore.Images.Thumbnails.getThumbnail;
 
-import java.io.ByteArrayOutputStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Useful links:
@@ -44,20 +53,24 @@ public class Photos extends CordovaPlugin {
 	private static final String TAG = Photos.class.getSimpleName();
 
 	private static final String P_ID = "id";
-	private static final String P_NAME = "name";
-	private static final String P_WIDTH = "width";
-	private static final String P_HEIGHT = "height";
-	private static final String P_LAT = "latitude";
-	private static final String P_LON = "longitude";
 	private static final String P_ORI = "orientation";
-	private static final String P_DATE = "date";
-	private static final String P_TS = "timestamp";
-	private static final String P_TYPE = "contentType";
-        private static final String P_COUNT = "count";
+	private static final String P_MESSAGE = "message";
 
 	private static final String P_SIZE = "dimension";
 	private static final String P_QUALITY = "quality";
 	private static final String P_AS_DATAURL = "asDataUrl";
+	private static final String P_LOW_MEMORY = "lowMemory";
+	private static final String P_AS_URL = "asUrl";
+	private static final String P_FORMAT = "format";
+	private static final String P_TARGET_BYTES = "targetBytes";
+	private static final String P_AS_CONTENT_URI = "asContentUri";
+
+	private static final String P_TILE_X = "x";
+	private static final String P_TILE_Y = "y";
+	private static final String P_TILE_WIDTH = "width";
+	private static final String P_TILE_HEIGHT = "height";
+	private static final String P_VIDEO_TIME = "time";
+	private static final String P_VIDEO_FRAMES = "frames";
 
 	private static final String P_C_MODE = "collectionMode";
 	private static final String P_C_MODE_ROLL = "ROLL";
@@ -68,9 +81,39 @@ public class Photos extends CordovaPlugin {
 	private static final String P_LIST_OFFSET = "offset";
 	private static final String P_LIST_LIMIT = "limit";
 	private static final String P_LIST_INTERVAL = "interval";
-
-	private static final String T_DATA_URL = "data:image/jpeg;base64,";
-	private static final String T_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZZZZZ";
+	private static final String P_LIST_PAGE_SIZE = "pageSize";
+	private static final String P_LIST_AFTER = "after";
+	private static final String P_LIST_REQUEST_ID = "requestId";
+	private static final String P_LIST_CREDITS = "credits";
+	private static final String P_LIST_ADAPTIVE = "adaptive";
+	private static final String P_LIST_MAX_LIMIT = "maxLimit";
+	private static final String P_LIST_FILTER = "filter";
+	private static final String P_LIST_LAYOUT = "layout";
+	private static final String P_LIST_DATES = "dates";
+	private static final String P_LIST_LAYOUT_COLUMNAR = "columnar";
+	private static final String P_LIST_PREFETCH = "prefetch";
+	private static final String P_PREFETCH_COUNT = "count";
+	private static final String P_PAGE_ITEMS = "items";
+	private static final String P_PAGE_NEXT = "next";
+	private static final String P_CHANGE = "change";
+	private static final String P_CHANGES_TOKEN = "token";
+	private static final String P_CHANGES_DELETED = "deleted";
+	private static final String P_CHANGES_RESET = "reset";
+
+	private static final String P_QUERY_OFFSET = "offset";
+	private static final String P_QUERY_LIMIT = "limit";
+	private static final String P_WATCH_DEBOUNCE = "debounce";
+	private static final String P_WATCH_MAX_WAIT = "maxWait";
+
+	private static final String C_ADDED = "added";
+	private static final String C_MODIFIED = "modified";
+
+	private static final String T_DOWNLOAD_PROGRESS = "download_progress";
+	private static final String T_DOWNLOAD_COMPLETE = "download_complete";
+
+	private static final String U_PREFIX = "__photos__";
+	private static final String U_THUMBNAIL = "thumbnail";
+	private static final String U_IMAGE = "image";
 
 	private static final String BN_CAMERA = "Camera";
 
@@ -78,7 +121,11 @@ public class Photos extends CordovaPlugin {
 	private static final String E_COLLECTION_MODE = "Unsupported collection mode";
 	private static final String E_PHOTO_ID_UNDEF = "Photo ID is undefined";
 	private static final String E_PHOTO_ID_WRONG = "Photo with specified ID wasn't found";
-	private static final String E_PHOTO_BUSY = "Fetching of photo assets is in progress";
+	private static final String E_PHOTO_BUSY = "Too many fetches of assets are in progress";
+	private static final String E_REQUEST_ID_BUSY = "Fetching with the same request ID is in progress";
+	private static final String E_DROPPED = "Request was dropped";
+	private static final String E_TILE_RECT = "Tile rectangle is undefined";
+	private static final String E_VIDEO_FRAME = "Video frame can't be extracted";
 
 	private static final String D_WIDTH = "download_width";
 	private static final String D_HEIGHT = "download_height";
@@ -86,31 +133,81 @@ public class Photos extends CordovaPlugin {
 	private static final int DEF_SIZE = 120;
 	private static final int DEF_QUALITY = 80;
 	private static final int DEF_ORI = 0;
-	private static final int DEF_WIDTH = 500;
-	private static final int DEF_HEIGHT = 500;
+	private static final int DEF_MAX_LISTINGS = 4;
+	private static final int MAX_QUERY_ARGS = 500;
+	private static final int DEF_WATCH_DEBOUNCE = 500;
+	private static final int DEF_WATCH_MAX_WAIT = 5000;
+	private static final int DEF_BITMAP_POOL_BYTES = 8 * 1024 * 1024;
+	private static final int DEF_PREFETCH_COUNT = 60;
+	private static final int MAX_PREFETCH_PENDING = 300;
+	private static final int MAX_VIDEO_FRAMES = 16;
+	/**
+	 * Allocation size of MINI_KIND thumbnail, which is at most 512x384 ARGB_8888.
+	 */
+	private static final int MINI_THUMB_BYTES = 512 * 384 * 4;
+
+	private static final String PREF_MAX_LISTINGS = "PhotosMaxListings";
+	private static final String PREF_CACHE_MEMORY = "PhotosThumbnailMemoryCacheMB";
+	private static final String PREF_CACHE_DISK = "PhotosThumbnailDiskCacheMB";
+	private static final String PREF_VIDEO_STORE = "PhotosVideoCacheMB";
+	private static final String PREF_TRACE = "PhotosTrace";
+	private static final String PREF_TILE_CACHE_MEMORY = "PhotosTileMemoryCacheMB";
+	private static final String PREF_TILE_CACHE_DISK = "PhotosTileDiskCacheMB";
+
+	private static final int DEF_CACHE_MEMORY_MB = 8;
+	private static final int DEF_CACHE_DISK_MB = 50;
+	private static final int DEF_TILE_CACHE_MEMORY_MB = 16;
+	private static final int DEF_TILE_CACHE_DISK_MB = 50;
+	private static final int DEF_TILE_DECODERS = 3;
+	private static final String DIR_THUMBNAILS = "photos-thumbnails";
+	private static final String DIR_TILES = "photos-tiles";
+	private static final String DIR_VIDEOS = "photos-videos";
+	private static final String DIR_CHANGES = "photos-changes";
+	private static final String DIR_INDEX_CHANGES = "photos-index-changes";
+	private static final int DEF_VIDEO_STORE_MB = 500;
 
-	private static final SimpleDateFormat DF = new SimpleDateFormat(T_DATE_FORMAT, Locale.getDefault());
+	@SuppressWarnings("MismatchedReadAndWriteOfArray")
+	private static final String[] PRJ_MEDIA_INFO = new String[]{ORIENTATION, DATE_MODIFIED};
 
 	@SuppressWarnings("MismatchedReadAndWriteOfArray")
-	private static final String[] PRJ_COLLECTIONS =
-			new String[]{BUCKET_ID, BUCKET_DISPLAY_NAME, SIZE};
+	private static final String[] PRJ_VIDEO_EXPORT = new String[]{
+			MediaStore.Video.Media.DATE_MODIFIED, MediaStore.Video.Media.SIZE, MediaStore.Video.Media.DISPLAY_NAME};
 
 	@SuppressWarnings("MismatchedReadAndWriteOfArray")
-	private static final String[] PRJ_PHOTOS =
-			new String[]{_ID, TITLE, DATE_TAKEN, LATITUDE, LONGITUDE, WIDTH, HEIGHT, ORIENTATION};
+	private static final String[] PRJ_MEDIA_INFOS = new String[]{_ID, ORIENTATION, DATE_MODIFIED};
+
+	@SuppressWarnings("MismatchedReadAndWriteOfArray")
+	private static final String[] PRJ_VIDEO_INFOS = new String[]{
+			MediaStore.Video.Media._ID, MediaStore.Video.Media.DATE_MODIFIED};
 
 	private String action;
 	private JSONArray data;
 	private CallbackContext permissionCallbackContext;
-	private volatile CallbackContext photosCallbackContext;
+	private final Map<String, Listing> listings = new HashMap<>();
+	private int maxListings = DEF_MAX_LISTINGS;
+	private ThumbnailCache thumbnailCache;
+	private ThumbnailCache tileCache;
+	private final TileDecoder tileDecoder = new TileDecoder(DEF_TILE_DECODERS);
+	private VideoStore videoStore;
+	private MediaChanges mediaChanges;
+	private MediaWatcher watcher;
+	private MediaIndex mediaIndex;
+	private final BitmapPool bitmapPool = new BitmapPool(DEF_BITMAP_POOL_BYTES);
+	private final Map<String, ThumbnailBatch> thumbnailBatches = new HashMap<>();
+	private Scheduler scheduler;
+	private ThumbnailPrefetcher prefetcher;
+	private PerfStats perfStats = new PerfStats(false);
 
 	@Override
 	public boolean execute(
-			String action, final JSONArray data, final CallbackContext callbackContext) throws JSONException {
+			final String action, final JSONArray data, final CallbackContext callback) throws JSONException {
+		// Stats calls are not measured, so that they don't show up in themselves
+		final boolean tracked = !action.equals("stats") && !action.equals("resetStats");
+		final CallbackContext callbackContext = tracked ? perfStats.track(action, callback, webView) : callback;
 		switch (action) {
 			case "collections":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.LISTING, action, null, callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							collections(data.optJSONObject(0), callbackContext);
@@ -119,25 +216,71 @@ public class Photos extends CordovaPlugin {
 				break;
 			case "photos":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.LISTING, action, data.optJSONObject(1), callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							photos(data.optJSONArray(0), data.optJSONObject(1), callbackContext);
 						}
 					});
 				break;
+			case "media":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.LISTING, action, data.optJSONObject(1), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							media(data.optJSONArray(0), data.optJSONObject(1), callbackContext);
+						}
+					});
+				break;
 			case "thumbnail":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.THUMBNAIL, action, data.optJSONObject(1), callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							thumbnail(data.optString(0, null), data.optJSONObject(1), callbackContext);
 						}
 					});
 				break;
+			case "thumbnails":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.THUMBNAIL, action, data.optJSONObject(1), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							thumbnails(data.optJSONArray(0), data.optJSONObject(1), false, callbackContext);
+						}
+					});
+				break;
+			case "videoThumbnail":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.VIDEO, action, data.optJSONObject(1), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							videoThumbnail(data.optString(0, null), data.optJSONObject(1), callbackContext);
+						}
+					});
+				break;
+			case "videoThumbnails":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.VIDEO, action, data.optJSONObject(1), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							thumbnails(data.optJSONArray(0), data.optJSONObject(1), true, callbackContext);
+						}
+					});
+				break;
+			case "tile":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.THUMBNAIL, action, data.optJSONObject(3), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							tile(data.optString(0, null), data.optJSONObject(1), data.optInt(2, 0),
+									data.optJSONObject(3), callbackContext);
+						}
+					});
+				break;
 			case "image":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.IO, action, null, callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							image(data.optJSONObject(0), callbackContext);
@@ -146,7 +289,7 @@ public class Photos extends CordovaPlugin {
 				break;
 			case "videos":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.LISTING, action, data.optJSONObject(1), callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							videos(data.optJSONArray(0), data.optJSONObject(1), callbackContext);
@@ -155,15 +298,66 @@ public class Photos extends CordovaPlugin {
 				break;
 			case "video":
 				if (checkPermission(action, data, callbackContext))
-					cordova.getThreadPool().execute(new Runnable() {
+					schedule(Scheduler.Lane.IO, action, null, callbackContext, new Runnable() {
 						@Override
 						public void run() {
 							video(data.optJSONObject(0), callbackContext);
 						}
 					});
 				break;
+			case "changesSince":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.LISTING, action, data.optJSONObject(1), callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							changesSince(data.optString(0, null), data.optJSONObject(1), callbackContext);
+						}
+					});
+				break;
+			case "query":
+				if (checkPermission(action, data, callbackContext))
+					schedule(Scheduler.Lane.LISTING, action, null, callbackContext, new Runnable() {
+						@Override
+						public void run() {
+							queryIndex(data.optJSONObject(0), data.opt(1), data.optJSONObject(2), callbackContext);
+						}
+					});
+				break;
+			case "watch":
+				if (checkPermission(action, data, callbackContext)) watch(data.optJSONObject(0), callbackContext);
+				break;
+			case "unwatch":
+				unwatch();
+				callbackContext.success();
+				break;
 			case "cancel":
-				cancel(callbackContext);
+				cancel(data.optString(0, null), data.optJSONArray(1), callbackContext);
+				break;
+			case "thumbnailCacheStats":
+				thumbnailCacheStats(data.optBoolean(0), callbackContext);
+				break;
+			case "clearThumbnailCache":
+				schedule(Scheduler.Lane.IO, action, null, callbackContext, new Runnable() {
+					@Override
+					public void run() {
+						thumbnailCache.clear();
+						tileCache.clear();
+						callbackContext.success();
+					}
+				});
+				break;
+			case "stats":
+				stats(callbackContext);
+				break;
+			case "resetStats":
+				resetStats(callbackContext);
+				break;
+			case "prefetchHint":
+				if (checkPermission(action, data, callbackContext))
+					prefetchHint(data.optJSONArray(0), data.optJSONObject(1), callbackContext);
+				break;
+			case "ack":
+				ack(data.optString(0, null), data.optInt(1, 1), callbackContext);
 				break;
 			default:
 				return false;
@@ -171,6 +365,76 @@ public class Photos extends CordovaPlugin {
 		return true;
 	}
 
+	@Override
+	protected void pluginInitialize() {
+		maxListings = Math.max(preferences.getInteger(PREF_MAX_LISTINGS, DEF_MAX_LISTINGS), 1);
+		perfStats = new PerfStats(preferences.getBoolean(PREF_TRACE, false));
+		thumbnailCache = new ThumbnailCache(
+				new File(cordova.getActivity().getCacheDir(), DIR_THUMBNAILS),
+				Math.max(preferences.getInteger(PREF_CACHE_MEMORY, DEF_CACHE_MEMORY_MB), 0) * 1024 * 1024,
+				Math.max(preferences.getInteger(PREF_CACHE_DISK, DEF_CACHE_DISK_MB), 0) * 1024L * 1024L);
+		tileCache = new ThumbnailCache(
+				new File(cordova.getActivity().getCacheDir(), DIR_TILES),
+				Math.max(preferences.getInteger(PREF_TILE_CACHE_MEMORY, DEF_TILE_CACHE_MEMORY_MB), 0) * 1024 * 1024,
+				Math.max(preferences.getInteger(PREF_TILE_CACHE_DISK, DEF_TILE_CACHE_DISK_MB), 0) * 1024L * 1024L);
+		scheduler = new Scheduler(maxListings);
+		prefetcher = new ThumbnailPrefetcher(new ThumbnailPrefetcher.Generator() {
+			@Override
+			public void generate(String photoId, int size, ImageEncoding encoding) {
+				final long start = perfStats.begin("prefetch");
+				try {
+					final ContentResolver resolver = cordova.getActivity().getContentResolver();
+					// Videos and deleted photos have no info, and no thumbnails so far
+					final MediaInfo info = queryMediaInfo(resolver, photoId);
+					if (info != null) thumbnailData(resolver, photoId, size, encoding, info.orientation, info.modified);
+				} finally {
+					perfStats.end("prefetch", start, 0);
+				}
+			}
+		}, scheduler, Scheduler.Lane.PREFETCH, MAX_PREFETCH_PENDING);
+
+		mediaChanges = new MediaChanges(new File(cordova.getActivity().getFilesDir(), DIR_CHANGES));
+
+		final File cacheDir = cordova.getActivity().getCacheDir();
+		videoStore = new VideoStore(new File(cacheDir, DIR_VIDEOS),
+				Math.max(preferences.getInteger(PREF_VIDEO_STORE, DEF_VIDEO_STORE_MB), 0) * 1024L * 1024L);
+		scheduler.execute(Scheduler.Lane.IO, null, new Runnable() {
+			@Override
+			public void run() {
+				videoStore.cleanup();
+				// Temporary copies of former versions were never deleted
+				final File[] legacy = cacheDir.listFiles();
+				if (legacy != null)
+					for (File file : legacy)
+						if (file.isFile() && file.getName().startsWith("video_") && file.getName().endsWith(".mp4"))
+							//noinspection ResultOfMethodCallIgnored
+							file.delete();
+			}
+		}, null);
+	}
+
+	@Override
+	public void onReset() {
+		unwatch();
+		cancelListings(null);
+		cancelThumbnailBatches(null);
+		if (prefetcher != null) prefetcher.clear();
+	}
+
+	@Override
+	public void onDestroy() {
+		unwatch();
+		cancelListings(null);
+		if (prefetcher != null) prefetcher.clear();
+		if (scheduler != null) scheduler.shutdown();
+		synchronized (this) {
+			if (mediaIndex != null) mediaIndex.close();
+			mediaIndex = null;
+		}
+		tileDecoder.clear();
+		bitmapPool.clear();
+	}
+
 	private boolean checkPermission(String action, JSONArray data, final CallbackContext callbackContext) {
 		if (!PermissionHelper.hasPermission(this, Manifest.permission.READ_EXTERNAL_STORAGE)) {
 			this.action = action;
@@ -214,33 +478,11 @@ public class Photos extends CordovaPlugin {
 		try (final Cursor cursor = query(
 				cordova.getActivity().getContentResolver(),
 				EXTERNAL_CONTENT_URI,
-				PRJ_COLLECTIONS,
+				MediaBuckets.PROJECTION,
 				selection,
 				selectionArgs,
-				DEFAULT_SORT_ORDER)) {
-			final JSONArray result = new JSONArray();
-			if (cursor.moveToFirst()) {
-				do {
-					final JSONObject item = new JSONObject();
-					item.put(P_ID, cursor.getString(cursor.getColumnIndex(BUCKET_ID)));
-					item.put(P_NAME, cursor.getString(cursor.getColumnIndex(BUCKET_DISPLAY_NAME)));
-                    item.put(P_COUNT, "1");
-
-                    JSONObject element = null;
-                    for (int i = 0; i < result.length(); i++) {
-                        if (result.getJSONObject(i).getString(P_ID).equalsIgnoreCase(item.getString(P_ID))){
-                            element = result.getJSONObject(i);
-                            break;
-                        }
-                    }
-                    if (element == null) {
-					    result.put(item);
-                    } else {
-                        element.put(P_COUNT, Integer.parseInt(element.getString(P_COUNT)) + 1);
-                    }
-				} while (cursor.moveToNext());
-			}
-			callbackContext.success(result);
+				MediaBuckets.ORDER)) {
+			callbackContext.success(MediaBuckets.aggregate(cursor));
 		} catch (Exception e) {
 			Log.e(TAG, e.getMessage(), e);
 			callbackContext.error(e.getMessage());
@@ -248,170 +490,350 @@ public class Photos extends CordovaPlugin {
 	}
 
 	private void photos(final JSONArray collectionIds, final JSONObject options, final CallbackContext callbackContext) {
-		if (getPhotosCallbackContext() != null) {
-			callbackContext.error(E_PHOTO_BUSY);
-			return;
-		}
-		setPhotosCallbackContext(callbackContext);
-
-		final String selection;
-		final String[] selectionArgs;
-		if (collectionIds != null && collectionIds.length() > 0) {
-			selection = BUCKET_ID + " IN (" + repeatText(collectionIds.length(), "?", ",") + ")";
-			selectionArgs = this.<String>jsonArrayToList(collectionIds).toArray(new String[collectionIds.length()]);
-		} else {
-			selection = null;
-			selectionArgs = null;
-		}
-
-		final int offset = options != null ? options.optInt(P_LIST_OFFSET, 0) : 0;
-		final int limit = options != null ? options.optInt(P_LIST_LIMIT, 0) : 0;
-		final int interval = options != null ? options.optInt(P_LIST_INTERVAL, 30) : 30;
-
-		try (final Cursor cursor = query(
-				cordova.getActivity().getContentResolver(),
-				EXTERNAL_CONTENT_URI,
-				PRJ_PHOTOS,
-				selection,
-				selectionArgs,
-				DATE_TAKEN + " DESC")) {
-			int fetched = 0;
-			JSONArray result = new JSONArray();
-			if (cursor.moveToFirst()) {
-				do {
-					if (getPhotosCallbackContext() == null) break;
-					if (offset <= fetched) {
-						final JSONObject item = new JSONObject();
-						item.put(P_ID, cursor.getString(cursor.getColumnIndex(_ID)));
-						item.put(P_NAME, cursor.getString(cursor.getColumnIndex(TITLE)));
-						item.put(P_TYPE, "image/jpeg");
-						long ts = cursor.getLong(cursor.getColumnIndex(DATE_TAKEN));
-						if (ts != 0) {
-							item.put(P_TS, ts);
-							item.put(P_DATE, DF.format(new Date(ts)));
-						}
-						String orientation = cursor.getString(cursor.getColumnIndex(ORIENTATION));
-						item.put(P_ORI, orientation==null?"0":orientation);
-
-						if (orientation!= null && (orientation.equals("90") || orientation.equals("270"))){
-							item.put(P_WIDTH, cursor.getInt(cursor.getColumnIndex(HEIGHT)));
-							item.put(P_HEIGHT, cursor.getInt(cursor.getColumnIndex(WIDTH)));
-						}
-						else{
-							item.put(P_WIDTH, cursor.getInt(cursor.getColumnIndex(WIDTH)));
-							item.put(P_HEIGHT, cursor.getInt(cursor.getColumnIndex(HEIGHT)));
-						}
-						
-						double latitude = cursor.getDouble(cursor.getColumnIndex(LATITUDE));
-						double longitude = cursor.getDouble(cursor.getColumnIndex(LONGITUDE));
-						if (latitude != 0 || longitude != 0) {
-							item.put(P_LAT, latitude);
-							item.put(P_LON, longitude);
-						}
-
-						result.put(item);
-						if (limit > 0 && result.length() >= limit) {
-							PluginResult pr = new PluginResult(PluginResult.Status.OK, result);
-							pr.setKeepCallback(true);
-							callbackContext.sendPluginResult(pr);
-							result = new JSONArray();
-							Thread.sleep(interval < 0 ? 30 : interval);
-						}
-					}
-					++fetched;
-				} while (cursor.moveToNext());
-			}
-			setPhotosCallbackContext(null);
-			callbackContext.success(result);
-		} catch (Exception e) {
-			Log.e(TAG, e.getMessage(), e);
-			setPhotosCallbackContext(null);
-			callbackContext.error(e.getMessage());
-		}
+		listMedia(MediaRowMapper.PHOTOS, EXTERNAL_CONTENT_URI, null, collectionIds, options, callbackContext);
 	}
 
 	private void thumbnail(final String photoId, final JSONObject options, final CallbackContext callbackContext) {
 		int size = options != null ? options.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE;
-		int quality = options != null ? options.optInt(P_QUALITY, DEF_QUALITY) : DEF_QUALITY;
 		boolean asDataUrl = options != null && options.optBoolean(P_AS_DATAURL);
+		boolean asUrl = options != null && options.optBoolean(P_AS_URL);
 
-		if (size >= 2000) {
+		if (size >= 2000 && !asUrl) {
 			this.imageGreat(photoId, options, callbackContext);
 			return ;
 		}
 		try {
 			if (photoId == null || photoId.isEmpty() || "null".equalsIgnoreCase(photoId))
 				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
-			final Bitmap thumb = getThumbnail(
-					cordova.getActivity().getContentResolver(), Long.parseLong(photoId), MINI_KIND, null);
-			if (thumb == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			final ImageEncoding encoding = encoding(options, DEF_QUALITY);
+			final ContentResolver resolver = cordova.getActivity().getContentResolver();
+			final MediaInfo info = queryMediaInfo(resolver, photoId);
+			if (info == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			final int orientation = options != null && options.has(P_ORI)
+					? options.optInt(P_ORI, DEF_ORI) : info.orientation;
+			if (asUrl) {
+				// Large thumbnails are decoded from originals, just like imageGreat() does
+				callbackContext.success(size >= 2000
+						? localUrl(U_IMAGE, photoId, size, size, orientation, info.modified, encoding)
+						: localUrl(U_THUMBNAIL, photoId, size, size, orientation, info.modified, encoding));
+				return;
+			}
+			final byte[] data = thumbnailData(resolver, photoId, size, encoding, orientation, info.modified);
 
-			double ratio = (double) size / (thumb.getWidth() >= thumb.getHeight() ? thumb.getWidth() : thumb.getHeight());
-			int thumbW = (int) Math.round(thumb.getWidth() * ratio);
-			int thumbH = (int) Math.round(thumb.getHeight() * ratio);
+			if (!asDataUrl) callbackContext.success(data);
+			else callbackContext.success(encoding.dataUrlPrefix() + Base64.encodeToString(data, Base64.NO_WRAP));
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
 
-			final ByteArrayOutputStream osThumb = new ByteArrayOutputStream();
+	/**
+	 * Returns thumbnail of given photo from {@link #thumbnailCache}, generating and caching it on miss.
+	 */
+	private byte[] thumbnailData(final ContentResolver resolver, final String photoId, final int size,
+			final ImageEncoding encoding, final int orientation, final long modified) {
+		final String key = ThumbnailCache.key(photoId, size, encoding.quality, orientation, encoding.key(), modified);
+		byte[] data = thumbnailCache.get(key);
+		if (data != null) return data;
+		data = generateThumbnail(resolver, photoId, size, encoding, orientation);
+		thumbnailCache.put(key, data);
+		return data;
+	}
 
-			int orientation = options != null && options.has(P_ORI) ? options.optInt(P_ORI, DEF_ORI) : getRotationFromMediaStore(cordova.getActivity().getContentResolver(), photoId);
+	private byte[] generateThumbnail(final ContentResolver resolver, final String photoId, final int size,
+			final ImageEncoding encoding, final int orientation) {
+		final long start = perfStats.begin("decode");
+		final Bitmap thumb;
+		try {
+			thumb = decodeMiniThumbnail(resolver, photoId);
+		} finally {
+			perfStats.end("decode", start, 0);
+		}
+		if (thumb == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
 
-			Matrix matrix = new Matrix();
-			matrix.postRotate(orientation);
-			Bitmap scaledBitmap = Bitmap.createScaledBitmap(thumb, thumbW, thumbH, true);
-			Bitmap rotatedBitmap = Bitmap.createBitmap(scaledBitmap, 0, 0, scaledBitmap.getWidth(), scaledBitmap.getHeight(), matrix, true);
+		double ratio = (double) size / (thumb.getWidth() >= thumb.getHeight() ? thumb.getWidth() : thumb.getHeight());
+		return transformAndEncode(thumb, ratio, orientation, encoding);
+	}
 
-			rotatedBitmap.compress(Bitmap.CompressFormat.JPEG, quality, osThumb);
+	/**
+	 * Decodes MINI_KIND thumbnail of given photo into a pooled bitmap, if platform allows that.
+	 */
+	private Bitmap decodeMiniThumbnail(final ContentResolver resolver, final String photoId) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inMutable = true;
+		options.inBitmap = bitmapPool.getReusable(MINI_THUMB_BYTES);
+		Bitmap thumb;
+		try {
+			thumb = getThumbnail(resolver, Long.parseLong(photoId), MINI_KIND, options);
+		} catch (IllegalArgumentException e) {
+			bitmapPool.put(options.inBitmap);
+			options.inBitmap = null;
+			thumb = getThumbnail(resolver, Long.parseLong(photoId), MINI_KIND, options);
+		}
+		if (thumb != options.inBitmap) {
+			bitmapPool.put(options.inBitmap);
+			if (thumb != null) bitmapPool.countAllocation();
+		}
+		return thumb;
+	}
+
+	/**
+	 * Scales and rotates given bitmap in a single pass and encodes it, returning all the bitmaps to the pool.
+	 */
+	private byte[] transformAndEncode(final Bitmap source, final double scale, final int orientation,
+			final ImageEncoding encoding) {
+		long start = perfStats.begin("transform");
+		final Bitmap target;
+		try {
+			target = BitmapTransform.scaleRotate(bitmapPool, source, scale, orientation);
+		} finally {
+			perfStats.end("transform", start, 0);
+		}
+		byte[] data = null;
+		start = perfStats.begin("encode");
+		try {
+			data = encoding.encode(target);
+			return data;
+		} finally {
+			perfStats.end("encode", start, data != null ? data.length : 0);
+			if (target != source) bitmapPool.put(target);
+			bitmapPool.put(source);
+		}
+	}
 
-			if (!asDataUrl) callbackContext.success(osThumb.toByteArray());
-			else callbackContext.success(T_DATA_URL + Base64.encodeToString(osThumb.toByteArray(), Base64.NO_WRAP));
+	/**
+	 * Generates thumbnails of given photos on thumbnail lane of {@link #scheduler}, or the ones of given videos
+	 * on video lane, streaming them in completion order. Large thumbnails are decoded from originals
+	 * on IO lane instead, just like {@link #thumbnail} does, so that only a couple of them take memory at once.
+	 * Orientations and modification dates of all the items are read in a single query beforehand.
+	 */
+	private void thumbnails(final JSONArray photoIds, final JSONObject options, final boolean video,
+			final CallbackContext callbackContext) {
+		final int size = options != null ? options.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE;
+		final boolean asDataUrl = options != null && options.optBoolean(P_AS_DATAURL);
+		final long time = options != null ? options.optLong(P_VIDEO_TIME, -1) : -1;
+		final int frames = videoFrames(options);
+		final ImageEncoding encoding;
+		try {
+			encoding = encoding(options, DEF_QUALITY);
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return;
+		}
+		String requestId = options != null ? options.optString(P_LIST_REQUEST_ID, null) : null;
+		if (requestId == null || requestId.isEmpty()) requestId = callbackContext.getCallbackId();
+
+		final List<String> ids = new ArrayList<>();
+		if (photoIds != null)
+			for (int i = 0; i < photoIds.length(); ++i) {
+				final String photoId = photoIds.optString(i, null);
+				if (photoId != null && !photoId.isEmpty() && !"null".equalsIgnoreCase(photoId)) ids.add(photoId);
+			}
+		final ThumbnailBatch batch = new ThumbnailBatch(requestId, callbackContext, ids.size());
+		synchronized (thumbnailBatches) {
+			if (thumbnailBatches.containsKey(requestId)) {
+				callbackContext.error(E_REQUEST_ID_BUSY);
+				return;
+			}
+			thumbnailBatches.put(requestId, batch);
+		}
+		if (ids.isEmpty()) {
+			finishThumbnailBatch(batch);
+			callbackContext.success(requestId);
+			return;
+		}
+
+		final ContentResolver resolver = cordova.getActivity().getContentResolver();
+		final Map<String, MediaInfo> infos;
+		try {
+			infos = video
+					? queryMediaInfos(resolver, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, PRJ_VIDEO_INFOS, ids)
+					: queryMediaInfos(resolver, EXTERNAL_CONTENT_URI, PRJ_MEDIA_INFOS, ids);
 		} catch (Exception e) {
 			Log.e(TAG, e.getMessage(), e);
+			finishThumbnailBatch(batch);
 			callbackContext.error(e.getMessage());
+			return;
+		}
+		final boolean large = !video && size >= 2000;
+		final Bitmap.Config config = pixelConfig(options);
+		final Scheduler.Lane lane = video ? Scheduler.Lane.VIDEO
+				: large ? Scheduler.Lane.IO : Scheduler.Lane.THUMBNAIL;
+		final String actionName = video ? "videoThumbnails" : "thumbnails";
+		// LIFO lanes run the last queued task first, so batch is queued backwards there to show its first cells first
+		if (lane.lifo) Collections.reverse(ids);
+		for (final String photoId : ids) {
+			scheduler.execute(lane, requestId, perfStats.queued(actionName, new Runnable() {
+				@Override
+				public void run() {
+					if (!batch.isWanted(photoId)) {
+						if (batch.skip()) finishThumbnailBatch(batch);
+						return;
+					}
+					boolean complete;
+					try {
+						final MediaInfo info = infos.get(photoId);
+						if (info == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+						final byte[] data = video
+								? videoThumbnailData(resolver, photoId, size, time, frames, encoding, info.modified)
+								: large ? imageData(photoId, size, size, info.orientation, config, encoding)
+								: thumbnailData(resolver, photoId, size, encoding, info.orientation, info.modified);
+						complete = batch.complete(photoId, asDataUrl
+								? new PluginResult(PluginResult.Status.OK,
+										encoding.dataUrlPrefix() + Base64.encodeToString(data, Base64.NO_WRAP))
+								: new PluginResult(PluginResult.Status.OK, data));
+					} catch (Exception e) {
+						Log.e(TAG, e.getMessage(), e);
+						complete = batch.fail(photoId, thumbnailError(photoId, e.getMessage()));
+					}
+					if (complete) finishThumbnailBatch(batch);
+				}
+			}), new Runnable() {
+				@Override
+				public void run() {
+					if (batch.fail(photoId, thumbnailError(photoId, E_DROPPED))) finishThumbnailBatch(batch);
+				}
+			});
 		}
 	}
 
-	public static int getRotationFromMediaStore(ContentResolver resolver, String photoId) {
-		Uri imageUri = Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId);
-		String[] columns = {MediaStore.Images.Media.DATA, MediaStore.Images.Media.ORIENTATION};
-		Cursor cursor = resolver.query(imageUri, columns, null, null, null);
-		if (cursor == null) return 0;
+	private static PluginResult thumbnailError(String photoId, String message) {
+		final JSONObject error = new JSONObject();
+		try {
+			error.put(P_ID, photoId);
+			error.put(P_MESSAGE, message);
+		} catch (JSONException ignored) {
+		}
+		return new PluginResult(PluginResult.Status.ERROR, error);
+	}
+
+	/**
+	 * Sends a poster frame, or a strip of frames, of given video, see {@link #videoThumbnailData}.
+	 */
+	private void videoThumbnail(final String videoId, final JSONObject options, final CallbackContext callbackContext) {
+		final int size = options != null ? options.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE;
+		final boolean asDataUrl = options != null && options.optBoolean(P_AS_DATAURL);
+		try {
+			if (videoId == null || videoId.isEmpty() || "null".equalsIgnoreCase(videoId))
+				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
+			final ImageEncoding encoding = encoding(options, DEF_QUALITY);
+			final ContentResolver resolver = cordova.getActivity().getContentResolver();
+			final MediaInfo info = queryMediaInfos(resolver, MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
+					PRJ_VIDEO_INFOS, Collections.singletonList(videoId)).get(videoId);
+			if (info == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			final byte[] data = videoThumbnailData(resolver, videoId, size,
+					options != null ? options.optLong(P_VIDEO_TIME, -1) : -1, videoFrames(options), encoding,
+					info.modified);
+
+			if (!asDataUrl) callbackContext.success(data);
+			else callbackContext.success(encoding.dataUrlPrefix() + Base64.encodeToString(data, Base64.NO_WRAP));
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns thumbnail of given video from {@link #thumbnailCache}, extracting and caching it on miss.
+	 *
+	 * @param time   a time of poster frame in millis, or negative to let extractor pick a representative one.
+	 * @param frames an amount of frames in a strip, or {@code 1} for a single poster frame, see {@link VideoFrames}.
+	 */
+	private byte[] videoThumbnailData(final ContentResolver resolver, final String videoId, final int size,
+			final long time, final int frames, final ImageEncoding encoding, final long modified) throws IOException {
+		final String key = ThumbnailCache.key(videoId + (frames > 1 ? "_strip" + frames : "_at" + Math.max(time, -1)),
+				size, encoding.quality, 0, encoding.key(), modified);
+		byte[] data = thumbnailCache.get(key);
+		if (data != null) return data;
+		final Bitmap frame;
+		final long start = perfStats.begin("extract");
+		try (VideoFrames extractor = VideoFrames.open(resolver,
+				Uri.withAppendedPath(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, videoId))) {
+			if (extractor == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			frame = frames > 1 ? extractor.strip(frames, size, bitmapPool) : extractor.frame(time, size);
+		} finally {
+			perfStats.end("extract", start, 0);
+		}
+		if (frame == null) throw new IllegalStateException(E_VIDEO_FRAME);
+		// Strips are drawn to size, and so are frames extracted by the ones of newer Androids
+		data = transformAndEncode(frame, frames > 1 ? 1
+				: BitmapLoader.fitScale(frame.getWidth(), frame.getHeight(), size, size), 0, encoding);
+		thumbnailCache.put(key, data);
+		return data;
+	}
+
+	private static int videoFrames(final JSONObject options) {
+		return Math.min(Math.max(options != null ? options.optInt(P_VIDEO_FRAMES, 1) : 1, 1), MAX_VIDEO_FRAMES);
+	}
+
+	private void finishThumbnailBatch(ThumbnailBatch batch) {
+		synchronized (thumbnailBatches) {
+			if (thumbnailBatches.get(batch.getId()) == batch) thumbnailBatches.remove(batch.getId());
+		}
+	}
+
+	/**
+	 * Reads orientations and modification dates of given items with {@code IN} queries of bounded size.
+	 *
+	 * @param projection either {@link #PRJ_MEDIA_INFOS}, or {@link #PRJ_VIDEO_INFOS}, which leaves orientations zero.
+	 * @return item infos by their IDs; missing items are absent.
+	 */
+	private static Map<String, MediaInfo> queryMediaInfos(ContentResolver resolver, Uri uri, String[] projection,
+			List<String> photoIds) {
+		final Map<String, MediaInfo> result = new HashMap<>();
+		for (int from = 0; from < photoIds.size(); from += MAX_QUERY_ARGS) {
+			final List<String> chunk = photoIds.subList(from, Math.min(from + MAX_QUERY_ARGS, photoIds.size()));
+			try (Cursor cursor = resolver.query(uri, projection,
+					_ID + " IN (" + repeatText(chunk.size(), "?", ",") + ")",
+					chunk.toArray(new String[chunk.size()]), null)) {
+				if (cursor == null || !cursor.moveToFirst()) continue;
+				final int idxId = cursor.getColumnIndex(_ID);
+				final int idxOri = cursor.getColumnIndex(ORIENTATION);
+				final int idxModified = cursor.getColumnIndex(DATE_MODIFIED);
+				do {
+					result.put(cursor.getString(idxId),
+							new MediaInfo(idxOri >= 0 ? cursor.getInt(idxOri) : 0, cursor.getLong(idxModified)));
+				} while (cursor.moveToNext());
+			}
+		}
+		return result;
+	}
 
-		cursor.moveToFirst();
+	public static int getRotationFromMediaStore(ContentResolver resolver, String photoId) {
+		final MediaInfo info = queryMediaInfo(resolver, photoId);
+		return info != null ? info.orientation : 0;
+	}
 
-		int orientationColumnIndex = cursor.getColumnIndex(columns[1]);
-		return cursor.getInt(orientationColumnIndex);
+	/**
+	 * Reads orientation and modification date of given photo in a single query.
+	 *
+	 * @return photo info or {@code null} if there's no such photo.
+	 */
+	private static MediaInfo queryMediaInfo(ContentResolver resolver, String photoId) {
+		try (Cursor cursor = resolver.query(Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId),
+				PRJ_MEDIA_INFO, null, null, null)) {
+			if (cursor == null || !cursor.moveToFirst()) return null;
+			return new MediaInfo(cursor.getInt(cursor.getColumnIndex(ORIENTATION)),
+					cursor.getLong(cursor.getColumnIndex(DATE_MODIFIED)));
+		}
 	}
 
 	private void imageGreat(final String photoId, final JSONObject options, final CallbackContext callbackContext) {
 		int size = options != null ? options.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE;
-		int quality = options != null ? options.optInt(P_QUALITY, DEF_QUALITY) : DEF_QUALITY;
 		boolean asDataUrl = options != null && options.optBoolean(P_AS_DATAURL);
 
 		try {
 			if (photoId == null || photoId.isEmpty() || "null".equalsIgnoreCase(photoId))
 				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
-			final Bitmap image = getBitmap(
-					cordova.getActivity().getContentResolver(),
-					Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId));
-			if (image == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
-			final ByteArrayOutputStream osImage = new ByteArrayOutputStream();
-
-			double ratio = (double) size / (image.getWidth() >= image.getHeight() ? image.getWidth() : image.getHeight());
-			int thumbW = (int) Math.round(image.getWidth() * ratio);
-			int thumbH = (int) Math.round(image.getHeight() * ratio);
+			final ImageEncoding encoding = encoding(options, DEF_QUALITY);
 
 			int orientation = options != null && options.has(P_ORI) ? options.optInt(P_ORI, DEF_ORI) : getRotationFromMediaStore(cordova.getActivity().getContentResolver(), photoId);
 
-			Matrix matrix = new Matrix();
-			matrix.postRotate(orientation);
-			Bitmap scaledBitmap = Bitmap.createScaledBitmap(image, thumbW, thumbH, true);
-			Bitmap rotatedBitmap = Bitmap.createBitmap(scaledBitmap, 0, 0, scaledBitmap.getWidth(), scaledBitmap.getHeight(), matrix, true);
+			final byte[] data = imageData(photoId, size, size, orientation, pixelConfig(options), encoding);
 
-			rotatedBitmap.compress(Bitmap.CompressFormat.JPEG, quality, osImage);
-
-			if (!asDataUrl) callbackContext.success(osImage.toByteArray());
-			else callbackContext.success(T_DATA_URL + Base64.encodeToString(osImage.toByteArray(), Base64.NO_WRAP));
-
-			callbackContext.success(osImage.toByteArray());
+			if (!asDataUrl) callbackContext.success(data);
+			else callbackContext.success(encoding.dataUrlPrefix() + Base64.encodeToString(data, Base64.NO_WRAP));
 		} catch (Exception e) {
 			Log.e(TAG, e.getMessage(), e);
 			callbackContext.error(e.getMessage());
@@ -422,114 +844,406 @@ public class Photos extends CordovaPlugin {
 
 		String photoId = photo != null ? photo.optString(P_ID, null) : null;
 		int orientation = photo != null ? photo.optInt(P_ORI, DEF_ORI) : DEF_ORI;
-		int width = photo != null ? photo.optInt(D_WIDTH, DEF_WIDTH) : DEF_WIDTH;
-		int height = photo != null ? photo.optInt(D_HEIGHT, DEF_HEIGHT) : DEF_HEIGHT;
+		// Download box is given for the photo as it's displayed, i.e. rotated
+		final boolean swap = orientation % 180 != 0;
+		int width = photo != null ? photo.optInt(swap ? D_HEIGHT : D_WIDTH, 0) : 0;
+		int height = photo != null ? photo.optInt(swap ? D_WIDTH : D_HEIGHT, 0) : 0;
 
 		try {
 			if (photoId == null || photoId.isEmpty() || "null".equalsIgnoreCase(photoId))
 				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
-			final Bitmap image = getBitmap(
-					cordova.getActivity().getContentResolver(),
-					Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId));
-			if (image == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
-			final ByteArrayOutputStream osImage = new ByteArrayOutputStream();
-
-			Matrix matrix = new Matrix();
-			matrix.postRotate(orientation);
-			width = Math.min(width, image.getWidth());
-			height = Math.min(height, image.getHeight());
-			Bitmap rotatedBitmap = Bitmap.createBitmap(image, 0, 0, image.getWidth(), image.getHeight(), matrix, true);
-			rotatedBitmap.compress(Bitmap.CompressFormat.JPEG, DEF_QUALITY, osImage);
-
-			callbackContext.success(osImage.toByteArray());
+			final ImageEncoding encoding = encoding(photo, DEF_QUALITY);
+			if (photo.optBoolean(P_AS_URL)) {
+				final MediaInfo info = queryMediaInfo(cordova.getActivity().getContentResolver(), photoId);
+				if (info == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+				callbackContext.success(localUrl(U_IMAGE, photoId, width, height, orientation, info.modified, encoding));
+				return;
+			}
+			callbackContext.success(imageData(photoId, width, height, orientation, pixelConfig(photo), encoding));
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Sends a region of given photo, which is given in coordinates of the photo as it's displayed, at given sample level.
+	 * Encoded tiles are cached in {@link #tileCache}, see {@link TileDecoder}.
+	 */
+	private void tile(final String photoId, final JSONObject rect, final int level, final JSONObject options,
+			final CallbackContext callbackContext) {
+		final boolean asDataUrl = options != null && options.optBoolean(P_AS_DATAURL);
+		try {
+			if (photoId == null || photoId.isEmpty() || "null".equalsIgnoreCase(photoId))
+				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
+			if (rect == null) throw new IllegalArgumentException(E_TILE_RECT);
+			final int x = rect.optInt(P_TILE_X);
+			final int y = rect.optInt(P_TILE_Y);
+			final int width = rect.optInt(P_TILE_WIDTH);
+			final int height = rect.optInt(P_TILE_HEIGHT);
+			if (width <= 0 || height <= 0) throw new IllegalArgumentException(TileDecoder.E_RECT);
+			final int sampleLevel = Math.min(Math.max(level, 0), TileDecoder.MAX_LEVEL);
+			final ImageEncoding encoding = encoding(options, DEF_QUALITY);
+
+			final ContentResolver resolver = cordova.getActivity().getContentResolver();
+			final MediaInfo info = queryMediaInfo(resolver, photoId);
+			if (info == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			final int orientation = options != null && options.has(P_ORI)
+					? options.optInt(P_ORI, DEF_ORI) : info.orientation;
+			final Bitmap.Config config = pixelConfig(options);
+			final String key = ThumbnailCache.key(photoId + '_' + x + '_' + y + '_' + width + '_' + height
+					+ (config != null ? "_" + config.name() : ""),
+					sampleLevel, encoding.quality, orientation, encoding.key(), info.modified);
+			byte[] data = tileCache.get(key);
+			if (data == null) {
+				final long start = perfStats.begin("decodeRegion");
+				final Bitmap region;
+				try {
+					region = tileDecoder.decode(resolver, Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId),
+							photoId + '_' + info.modified, x, y, width, height, sampleLevel, orientation, config);
+				} finally {
+					perfStats.end("decodeRegion", start, 0);
+				}
+				if (region == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+				data = transformAndEncode(region, 1, orientation, encoding);
+				tileCache.put(key, data);
+			}
+
+			if (!asDataUrl) callbackContext.success(data);
+			else callbackContext.success(encoding.dataUrlPrefix() + Base64.encodeToString(data, Base64.NO_WRAP));
 		} catch (Exception e) {
 			Log.e(TAG, e.getMessage(), e);
 			callbackContext.error(e.getMessage());
 		}
 	}
 
+	/**
+	 * Decodes given photo to fit into {@code width} x {@code height} box, rotates and encodes it.
+	 * If photo needs neither downscale nor rotation and is already in requested format, its original data is returned.
+	 */
+	private byte[] imageData(final String photoId, final int width, final int height, final int orientation,
+			final Bitmap.Config config, final ImageEncoding encoding) throws IOException {
+		if (orientation % 360 == 0) {
+			final byte[] original = originalData(photoId, width, height, encoding);
+			if (original != null) return original;
+		}
+		final Bitmap image = decodeImage(photoId, width, height, config);
+		if (image == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+		return transformAndEncode(image, 1, orientation, encoding);
+	}
+
+	/**
+	 * @return original data of given photo if it fits into given box and encoding as is,
+	 * or {@code null} if it has to be re-encoded.
+	 */
+	private byte[] originalData(final String photoId, final int width, final int height,
+			final ImageEncoding encoding) throws IOException {
+		final ContentResolver resolver = cordova.getActivity().getContentResolver();
+		final Uri uri = Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId);
+		final BitmapFactory.Options bounds = BitmapLoader.readBounds(resolver, uri);
+		if (bounds == null || !encoding.accepts(bounds.outMimeType)
+				|| BitmapLoader.fitScale(bounds.outWidth, bounds.outHeight, width, height) < 1) return null;
+		final long start = perfStats.begin("passthrough");
+		long size = 0;
+		try (InputStream in = resolver.openInputStream(uri)) {
+			if (in == null) return null;
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+				// Original over the budget is re-encoded to fit it
+				if (encoding.targetBytes > 0 && out.size() > encoding.targetBytes) return null;
+			}
+			size = out.size();
+			return out.toByteArray();
+		} finally {
+			perfStats.end("passthrough", start, size);
+		}
+	}
+
+	private Bitmap decodeImage(final String photoId, final int width, final int height,
+			final Bitmap.Config config) throws IOException {
+		final long start = perfStats.begin("decode");
+		try {
+			return BitmapLoader.decode(
+					cordova.getActivity().getContentResolver(),
+					Uri.withAppendedPath(EXTERNAL_CONTENT_URI, photoId),
+					width, height, config, bitmapPool);
+		} finally {
+			perfStats.end("decode", start, 0);
+		}
+	}
+
+	/**
+	 * Builds a URL that WebView loads through {@link #getPathHandler()}, so that image data is streamed
+	 * right into it instead of passing the bridge. Modification date makes URL change along with the photo.
+	 * Path is {@code /kind/id/width/height/orientation/modified/quality/encoding}.
+	 */
+	private String localUrl(String kind, String photoId, int width, int height, int orientation, long modified,
+			ImageEncoding encoding) {
+		return preferences.getString("scheme", "https") + "://" + preferences.getString("hostname", "localhost")
+				+ "/" + U_PREFIX + "/" + kind + "/" + Uri.encode(photoId) + "/" + width + "/" + height
+				+ "/" + orientation + "/" + modified + "/" + encoding.quality + "/" + encoding.key();
+	}
+
+	/**
+	 * Serves URLs made by {@link #localUrl}: thumbnails right from the cache, when they are there,
+	 * and images straight from the encoder. WebView loads URLs on threads of its own, which the scheduler doesn't
+	 * bound, so decoding is handed over to thumbnail or IO lane while the loader thread waits for it.
+	 */
+	@Override
+	public CordovaPluginPathHandler getPathHandler() {
+		return new CordovaPluginPathHandler(new WebViewAssetLoader.PathHandler() {
+			@Override
+			public WebResourceResponse handle(String path) {
+				final String[] parts = (path.startsWith("/") ? path.substring(1) : path).split("/");
+				if (parts.length != 9 || !U_PREFIX.equals(parts[0])) return null;
+				if (!PermissionHelper.hasPermission(Photos.this, Manifest.permission.READ_EXTERNAL_STORAGE)) return null;
+				try {
+					final String photoId = Uri.decode(parts[2]);
+					final int width = Integer.parseInt(parts[3]);
+					final int height = Integer.parseInt(parts[4]);
+					final int orientation = Integer.parseInt(parts[5]);
+					final long modified = Long.parseLong(parts[6]);
+					final ImageEncoding encoding = ImageEncoding.fromKey(parts[8], Integer.parseInt(parts[7]));
+					final InputStream data;
+					if (U_THUMBNAIL.equals(parts[1])) data = openThumbnail(photoId, width, encoding, orientation, modified);
+					else if (U_IMAGE.equals(parts[1]))
+						data = new ByteArrayInputStream(await(Scheduler.Lane.IO, "urlImage", new Callable<byte[]>() {
+							@Override
+							public byte[] call() throws Exception {
+								return imageData(photoId, width, height, orientation, null, encoding);
+							}
+						}));
+					else return null;
+					return new WebResourceResponse(encoding.mimeType(), null, data);
+				} catch (Exception e) {
+					Log.e(TAG, e.getMessage(), e);
+					return null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Opens a thumbnail for streaming: cached one right from memory or disk, a new one after generating it
+	 * on thumbnail lane and caching it.
+	 */
+	private InputStream openThumbnail(final String photoId, final int size, final ImageEncoding encoding,
+			final int orientation, final long modified) throws Exception {
+		final String key = ThumbnailCache.key(photoId, size, encoding.quality, orientation, encoding.key(), modified);
+		final InputStream cached = thumbnailCache.open(key);
+		if (cached != null) return cached;
+		final byte[] data = await(Scheduler.Lane.THUMBNAIL, "urlThumbnail", new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return generateThumbnail(cordova.getActivity().getContentResolver(), photoId, size, encoding,
+						orientation);
+			}
+		});
+		thumbnailCache.put(key, data);
+		return new ByteArrayInputStream(data);
+	}
+
+	/**
+	 * Runs given task on given lane of {@link #scheduler} and waits for its result.
+	 *
+	 * @throws CancellationException if the task was dropped from the lane.
+	 */
+	private <T> T await(final Scheduler.Lane lane, final String action, final Callable<T> task) throws Exception {
+		final FutureTask<T> future = new FutureTask<>(task);
+		scheduler.execute(lane, null, perfStats.queued(action, future), new Runnable() {
+			@Override
+			public void run() {
+				future.cancel(false);
+			}
+		});
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * @return a pixel config to decode images with: {@code RGB_565} if caller allows lower quality
+	 * for a half of memory footprint, or {@code null} for default one.
+	 */
+	private static Bitmap.Config pixelConfig(final JSONObject options) {
+		return options != null && options.optBoolean(P_LOW_MEMORY) ? Bitmap.Config.RGB_565 : null;
+	}
+
+	/**
+	 * @return an output encoding of images requested by given options.
+	 * @throws IllegalArgumentException if format isn't supported.
+	 */
+	private static ImageEncoding encoding(final JSONObject options, final int quality) {
+		if (options == null) return new ImageEncoding(null, quality, 0);
+		return new ImageEncoding(options.optString(P_FORMAT, null), options.optInt(P_QUALITY, quality),
+				options.optInt(P_TARGET_BYTES, 0));
+	}
+
 	private void videos(final JSONArray collectionIds, final JSONObject options, final CallbackContext callbackContext) {
-		if (getPhotosCallbackContext() != null) {
-			callbackContext.error(E_PHOTO_BUSY);
+		listMedia(MediaRowMapper.VIDEOS, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, null,
+				collectionIds, options, callbackContext);
+	}
+
+	/**
+	 * Lists photos and videos at once, in a single query of MediaStore files table, so that they come
+	 * already merged by date.
+	 */
+	private void media(final JSONArray collectionIds, final JSONObject options, final CallbackContext callbackContext) {
+		listMedia(MediaRowMapper.MEDIA, MediaStore.Files.getContentUri(MediaStore.VOLUME_EXTERNAL),
+				MediaChanges.SEL_MEDIA, collectionIds, options, callbackContext);
+	}
+
+	/**
+	 * Common listing loop of {@link #photos}, {@link #videos} and {@link #media}: items of given media {@code uri}
+	 * that match {@code selection}, if any, are mapped by {@code mapper} and sent either all at once,
+	 * by {@code limit} sized bundles or as a single keyset page.
+	 */
+	private void listMedia(final MediaRowMapper mapper, final Uri uri, final String selection,
+			final JSONArray collectionIds, final JSONObject options, final CallbackContext callbackContext) {
+		final int pageSize = options != null ? options.optInt(P_LIST_PAGE_SIZE, 0) : 0;
+		final int offset = options != null && pageSize <= 0 ? options.optInt(P_LIST_OFFSET, 0) : 0;
+		final int limit = options != null && pageSize <= 0 ? Math.max(options.optInt(P_LIST_LIMIT, 0), 0) : 0;
+
+		// Thumbnails of the first items of each bundle or page are generated while they are on their way to client,
+		// which asks for them next
+		final JSONObject prefetch = options != null && mapper != MediaRowMapper.VIDEOS
+				? options.optJSONObject(P_LIST_PREFETCH) : null;
+		final int prefetchCount = prefetch != null ? Math.max(prefetch.optInt(P_PREFETCH_COUNT, DEF_PREFETCH_COUNT), 0) : 0;
+		final int prefetchSize = prefetch != null ? prefetch.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE;
+		final List<String> prefetchIds = new ArrayList<>();
+
+		final MediaFilter filter;
+		final ImageEncoding prefetchEncoding;
+		try {
+			// Videos have orientation since Android Q only
+			filter = new MediaFilter(options != null ? options.optJSONObject(P_LIST_FILTER) : null,
+					mapper != MediaRowMapper.VIDEOS || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q);
+			prefetchEncoding = encoding(prefetch, DEF_QUALITY);
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+			return;
+		}
+		final Listing listing = newListing(options, limit, callbackContext);
+		final String error = startListing(listing);
+		if (error != null) {
+			callbackContext.error(error);
 			return;
 		}
-		setPhotosCallbackContext(callbackContext);
 
-		final String selection;
-		final String[] selectionArgs;
+		final List<String> clauses = new ArrayList<>();
+		final List<String> args = new ArrayList<>();
+		if (selection != null) clauses.add(selection);
 		if (collectionIds != null && collectionIds.length() > 0) {
-			selection = BUCKET_ID + " IN (" + repeatText(collectionIds.length(), "?", ",") + ")";
-			selectionArgs = this.<String>jsonArrayToList(collectionIds).toArray(new String[collectionIds.length()]);
-		} else {
-			selection = null;
-			selectionArgs = null;
+			clauses.add(BUCKET_ID + " IN (" + repeatText(collectionIds.length(), "?", ",") + ")");
+			args.addAll(this.<String>jsonArrayToList(collectionIds));
 		}
+		filter.appendTo(clauses, args);
+		final String after = options != null ? options.optString(P_LIST_AFTER, null) : null;
 
-		final int offset = options != null ? options.optInt(P_LIST_OFFSET, 0) : 0;
-		final int limit = options != null ? options.optInt(P_LIST_LIMIT, 0) : 0;
-		final int interval = options != null ? options.optInt(P_LIST_INTERVAL, 30) : 30;
-
-		try (final Cursor cursor = query(
+		try (final Cursor cursor = queryPage(
 				cordova.getActivity().getContentResolver(),
-				MediaStore.Video.Media.EXTERNAL_CONTENT_URI,
-				new String[]{MediaStore.Video.Media._ID, MediaStore.Video.Media.TITLE, 
-					MediaStore.Video.Media.DATE_TAKEN, MediaStore.Video.Media.LATITUDE, 
-					MediaStore.Video.Media.LONGITUDE, MediaStore.Video.Media.WIDTH, 
-					MediaStore.Video.Media.HEIGHT, MediaStore.Video.Media.DURATION},
-				selection,
-				selectionArgs,
-				MediaStore.Video.Media.DATE_TAKEN + " DESC")) {
-			int fetched = 0;
-			JSONArray result = new JSONArray();
-			if (cursor.moveToFirst()) {
-				do {
-					if (getPhotosCallbackContext() == null) break;
-					if (offset <= fetched) {
-						final JSONObject item = new JSONObject();
-						item.put(P_ID, cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media._ID)));
-						item.put(P_NAME, cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.TITLE)));
-						item.put(P_TYPE, "video/mp4");
-						long ts = cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media.DATE_TAKEN));
-						if (ts != 0) {
-							item.put(P_TS, ts);
-							item.put(P_DATE, DF.format(new Date(ts)));
-						}
-						
-						item.put(P_WIDTH, cursor.getInt(cursor.getColumnIndex(MediaStore.Video.Media.WIDTH)));
-						item.put(P_HEIGHT, cursor.getInt(cursor.getColumnIndex(MediaStore.Video.Media.HEIGHT)));
-						
-						double latitude = cursor.getDouble(cursor.getColumnIndex(MediaStore.Video.Media.LATITUDE));
-						double longitude = cursor.getDouble(cursor.getColumnIndex(MediaStore.Video.Media.LONGITUDE));
-						if (latitude != 0 || longitude != 0) {
-							item.put(P_LAT, latitude);
-							item.put(P_LON, longitude);
-						}
+				uri,
+				mapper.projection(),
+				MediaPages.selection(after, clauses, args),
+				args.toArray(new String[args.size()]),
+				MediaPages.ORDER_BY_DATE_TAKEN,
+				// One more row tells whether there's a next page
+				pageSize > 0 ? pageSize + 1 : 0)) {
+			String next = null;
+			final MediaRowMapper.Batch result = newBatch(options);
+			if (cursor.moveToPosition(Math.max(offset, 0))) {
+				final MediaRowMapper.Binding row = bindRows(mapper, cursor, options);
+				final int idxId = cursor.getColumnIndex(_ID);
+				// Videos of media listings have no photo thumbnails
+				final int idxMime = mapper == MediaRowMapper.MEDIA ? cursor.getColumnIndex(MIME_TYPE) : -1;
+				next = MediaPages.read(cursor, row, result, listing, limit > 0, pageSize, new MediaPages.Reader() {
+					@Override
+					public void onRow(Cursor cursor) {
+						if (prefetchIds.size() < prefetchCount && (idxMime < 0 || isImage(cursor.getString(idxMime))))
+							prefetchIds.add(cursor.getString(idxId));
+					}
 
-						// Add duration in milliseconds
-						long duration = cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media.DURATION));
-						item.put("duration", duration);
-
-						result.put(item);
-						if (limit > 0 && result.length() >= limit) {
-							PluginResult pr = new PluginResult(PluginResult.Status.OK, result);
-							pr.setKeepCallback(true);
-							callbackContext.sendPluginResult(pr);
-							result = new JSONArray();
-							Thread.sleep(interval < 0 ? 30 : interval);
+					@Override
+					public boolean onBundle(JSONArray bundle) throws InterruptedException {
+						prefetch(prefetchIds, prefetchSize, prefetchEncoding);
+						return sendBundle(listing, bundle);
+					}
+				});
+			}
+			if (!listing.isCancelled()) prefetch(prefetchIds, prefetchSize, prefetchEncoding);
+			finishListing(listing);
+			if (pageSize > 0) {
+				final JSONObject page = new JSONObject();
+				page.put(P_PAGE_ITEMS, result.drain());
+				page.put(P_PAGE_NEXT, next != null ? next : JSONObject.NULL);
+				callbackContext.success(page);
+			} else callbackContext.success(result.drain());
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			finishListing(listing);
+			callbackContext.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Lists photos and videos added or modified since given token, in bundles just like {@link #listMedia} does,
+	 * and finishes with an object of IDs of deleted items, a token for the next call and the rest of the items.
+	 * See {@link MediaChanges}.
+	 */
+	private void changesSince(final String token, final JSONObject options, final CallbackContext callbackContext) {
+		final int limit = options != null ? Math.max(options.optInt(P_LIST_LIMIT, 0), 0) : 0;
+		final Listing listing = newListing(options, limit, callbackContext);
+		final String error = startListing(listing);
+		if (error != null) {
+			callbackContext.error(error);
+			return;
+		}
+		try {
+			final ContentResolver resolver = cordova.getActivity().getContentResolver();
+			final MediaChanges.Delta delta = mediaChanges.start(cordova.getActivity(), token);
+			final MediaRowMapper.Batch result = newBatch(options);
+			scan:
+			for (int pass = 0; pass < 2; ++pass) {
+				final MediaRowMapper mapper = pass == 0 ? MediaRowMapper.PHOTOS : MediaRowMapper.VIDEOS;
+				final Uri uri = pass == 0 ? EXTERNAL_CONTENT_URI : MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+				try (final Cursor cursor = queryPage(resolver, uri, mapper.projection(),
+						delta.selection(), delta.selectionArgs(), _ID, 0)) {
+					final MediaRowMapper.Binding row = bindRows(mapper, cursor, options);
+					final int idxId = cursor.getColumnIndex(_ID);
+					while (cursor.moveToNext()) {
+						if (listing.isCancelled()) break scan;
+						result.add(row);
+						result.set(P_CHANGE, delta.isAdded(cursor.getLong(idxId)) ? C_ADDED : C_MODIFIED);
+						if (limit > 0 && result.length() >= listing.getBatchSize()) {
+							if (!sendBundle(listing, result.drain())) break scan;
 						}
 					}
-					++fetched;
-				} while (cursor.moveToNext());
+				}
 			}
-			setPhotosCallbackContext(null);
-			callbackContext.success(result);
+			finishListing(listing);
+			final JSONObject changes = new JSONObject();
+			changes.put(P_PAGE_ITEMS, result.drain());
+			changes.put(P_CHANGES_DELETED, delta.deleted());
+			// Cancelled delta is incomplete, so client has to keep its previous token, which is still valid
+			changes.put(P_CHANGES_TOKEN, listing.isCancelled() ? JSONObject.NULL : delta.getToken());
+			changes.put(P_CHANGES_RESET, delta.isReset());
+			callbackContext.success(changes);
 		} catch (Exception e) {
 			Log.e(TAG, e.getMessage(), e);
-			setPhotosCallbackContext(null);
+			finishListing(listing);
 			callbackContext.error(e.getMessage());
 		}
 	}
 
+	/**
+	 * Hands video over to client: either as its content URI, that WebView plays without copying,
+	 * or as a file exported to {@link #videoStore}, streaming progress of the copy.
+	 */
 	private void video(final JSONObject video, final CallbackContext callbackContext) {
 		String videoId = video != null ? video.optString(P_ID, null) : null;
 
@@ -537,63 +1251,399 @@ public class Photos extends CordovaPlugin {
 			if (videoId == null || videoId.isEmpty() || "null".equalsIgnoreCase(videoId))
 				throw new IllegalArgumentException(E_PHOTO_ID_UNDEF);
 
-			Uri videoUri = Uri.withAppendedPath(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, videoId);
-			ContentResolver resolver = cordova.getActivity().getContentResolver();
+			final Uri videoUri = Uri.withAppendedPath(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, videoId);
+			final ContentResolver resolver = cordova.getActivity().getContentResolver();
+
+			final long modified;
+			final long size;
+			final String ext;
+			try (Cursor cursor = resolver.query(videoUri, PRJ_VIDEO_EXPORT, null, null, null)) {
+				if (cursor == null || !cursor.moveToFirst()) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+				modified = cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media.DATE_MODIFIED));
+				size = cursor.getLong(cursor.getColumnIndex(MediaStore.Video.Media.SIZE));
+				ext = videoExtension(cursor.getString(cursor.getColumnIndex(MediaStore.Video.Media.DISPLAY_NAME)));
+			}
+
+			if (video.optBoolean(P_AS_CONTENT_URI)) {
+				callbackContext.success(videoResult(T_DOWNLOAD_COMPLETE, videoUri.toString()));
+				return;
+			}
 
-			// Get video file path
-			String[] projection = {MediaStore.Video.Media.DATA};
-			Cursor cursor = resolver.query(videoUri, projection, null, null, null);
-			if (cursor == null || !cursor.moveToFirst()) {
-				throw new IllegalStateException(E_PHOTO_ID_WRONG);
+			File file = videoStore.get(videoId, modified, ext, size);
+			if (file == null) {
+				try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(videoUri, "r")) {
+					if (pfd == null) throw new IllegalStateException(E_PHOTO_ID_WRONG);
+					final long start = perfStats.begin("copy");
+					try {
+						file = videoStore.export(pfd.getFileDescriptor(), videoId, modified, ext,
+							new VideoStore.ProgressListener() {
+								@Override
+								public void onProgress(long copied, long total) {
+									try {
+										final JSONObject progress = new JSONObject();
+										progress.put("type", T_DOWNLOAD_PROGRESS);
+										progress.put("progress", (double) copied / total);
+										final PluginResult pr = new PluginResult(PluginResult.Status.OK, progress);
+										pr.setKeepCallback(true);
+										callbackContext.sendPluginResult(pr);
+									} catch (JSONException e) {
+										Log.w(TAG, e.getMessage(), e);
+									}
+								}
+							});
+					} finally {
+						perfStats.end("copy", start, file != null ? file.length() : 0);
+					}
+				}
 			}
+			callbackContext.success(videoResult(T_DOWNLOAD_COMPLETE, Uri.fromFile(file).toString()));
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
 
-			String videoPath = cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.Video.Media.DATA));
-			cursor.close();
+	private static JSONObject videoResult(String type, String uri) throws JSONException {
+		final JSONObject result = new JSONObject();
+		result.put("type", type);
+		result.put("uri", uri);
+		return result;
+	}
 
-			// Create a temporary file to store the video
-			File tempFile = File.createTempFile("video_", ".mp4", cordova.getActivity().getCacheDir());
-			FileInputStream inStream = new FileInputStream(videoPath);
-			FileOutputStream outStream = new FileOutputStream(tempFile);
+	private static String videoExtension(String displayName) {
+		final int dot = displayName != null ? displayName.lastIndexOf('.') : -1;
+		return dot >= 0 && displayName.length() - dot <= 6 ? displayName.substring(dot) : ".mp4";
+	}
 
-			// Copy video data
-			byte[] buffer = new byte[1024];
-			int length;
-			while ((length = inStream.read(buffer)) > 0) {
-				outStream.write(buffer, 0, length);
+	/**
+	 * Queries photos and videos from {@link MediaIndex}, which is created on the first query
+	 * and brought up to date before each one.
+	 *
+	 * @param filter a filter of items, see {@link MediaFilter}.
+	 * @param sort   a sort key or an array of them, see {@link MediaIndex#orderBy}.
+	 * @param page   an object with {@code offset} and {@code limit} of items to return.
+	 */
+	private void queryIndex(final JSONObject filter, final Object sort, final JSONObject page,
+			final CallbackContext callbackContext) {
+		final int offset = page != null ? Math.max(page.optInt(P_QUERY_OFFSET, 0), 0) : 0;
+		final int limit = page != null ? Math.max(page.optInt(P_QUERY_LIMIT, 0), 0) : 0;
+		try {
+			final MediaFilter mediaFilter = new MediaFilter(filter, true);
+			final String orderBy = MediaIndex.orderBy(sort == JSONObject.NULL ? null : sort);
+			final MediaIndex index;
+			synchronized (this) {
+				if (mediaIndex == null)
+					mediaIndex = new MediaIndex(cordova.getActivity().getApplicationContext(),
+							new File(cordova.getActivity().getFilesDir(), DIR_INDEX_CHANGES));
+				index = mediaIndex;
+			}
+			index.sync();
+			// One more row tells whether there's a next page
+			try (final Cursor cursor = index.query(mediaFilter, orderBy, offset, limit > 0 ? limit + 1 : 0)) {
+				final JSONArray items = new JSONArray();
+				if (cursor.moveToFirst()) {
+					final MediaRowMapper.Binding row = MediaRowMapper.MEDIA.bind(cursor);
+					do {
+						if (limit > 0 && items.length() >= limit) break;
+						items.put(row.map());
+					} while (cursor.moveToNext());
+				}
+				final JSONObject result = new JSONObject();
+				result.put(P_PAGE_ITEMS, items);
+				result.put(P_PAGE_NEXT, limit > 0 && cursor.getCount() > limit ? offset + limit : JSONObject.NULL);
+				callbackContext.success(result);
 			}
+		} catch (Exception e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
 
-			inStream.close();
-			outStream.close();
+	/**
+	 * Starts notifying given callback of changes of photos and videos, replacing the running watch if any.
+	 * See {@link MediaWatcher}.
+	 */
+	private void watch(final JSONObject options, final CallbackContext callbackContext) {
+		final int debounce = options != null ? options.optInt(P_WATCH_DEBOUNCE, DEF_WATCH_DEBOUNCE) : DEF_WATCH_DEBOUNCE;
+		final int maxWait = options != null ? options.optInt(P_WATCH_MAX_WAIT, DEF_WATCH_MAX_WAIT) : DEF_WATCH_MAX_WAIT;
+		final MediaWatcher started = new MediaWatcher(cordova.getActivity().getContentResolver(), callbackContext,
+				debounce, maxWait, MAX_QUERY_ARGS);
+		final MediaWatcher stopped;
+		synchronized (this) {
+			stopped = watcher;
+			watcher = started;
+		}
+		if (stopped != null) stopped.stop();
+		started.start();
+	}
 
-			// Send the video file path back to JavaScript
-			JSONObject result = new JSONObject();
-			result.put("type", "download_complete");
-			result.put("uri", "file://" + tempFile.getAbsolutePath());
-			callbackContext.success(result);
+	private void unwatch() {
+		final MediaWatcher stopped;
+		synchronized (this) {
+			stopped = watcher;
+			watcher = null;
+		}
+		if (stopped != null) stopped.stop();
+	}
 
-			// Clean up the temporary file after a delay
-			tempFile.deleteOnExit();
+	/**
+	 * Cancels listing or thumbnail batch with specified request ID, or all of them if ID is omitted.
+	 * If {@code photoIds} are given, only these photos are dropped from the thumbnail batch.
+	 */
+	private void cancel(final String requestId, final JSONArray photoIds, final CallbackContext callbackContext) {
+		if (photoIds != null && requestId != null) {
+			final ThumbnailBatch batch;
+			synchronized (thumbnailBatches) {
+				batch = thumbnailBatches.get(requestId);
+			}
+			if (batch != null) batch.drop(this.<String>jsonArrayToList(photoIds));
+		} else {
+			// Without request ID only listings and thumbnail batches stop, other queued calls are left to run
+			scheduler.drop(requestId);
+			cancelListings(requestId);
+			cancelThumbnailBatches(requestId);
+		}
+		callbackContext.success();
+	}
 
-		} catch (Exception e) {
+	private void cancelThumbnailBatches(String requestId) {
+		final List<ThumbnailBatch> cancelled = new ArrayList<>();
+		synchronized (thumbnailBatches) {
+			if (requestId == null || requestId.isEmpty()) cancelled.addAll(thumbnailBatches.values());
+			else if (thumbnailBatches.containsKey(requestId)) cancelled.add(thumbnailBatches.get(requestId));
+		}
+		// Cancelled batches are unregistered by their last task, which sends the final result
+		for (ThumbnailBatch batch : cancelled) {
+			perfStats.cancelled(batch.getCallbackContext());
+			batch.cancel();
+		}
+	}
+
+	private void cancelListings(String requestId) {
+		final List<Listing> cancelled = new ArrayList<>();
+		synchronized (listings) {
+			if (requestId == null || requestId.isEmpty()) {
+				cancelled.addAll(listings.values());
+				listings.clear();
+			} else {
+				final Listing listing = listings.remove(requestId);
+				if (listing != null) cancelled.add(listing);
+			}
+		}
+		for (Listing listing : cancelled) {
+			perfStats.cancelled(listing.getCallbackContext());
+			listing.cancel();
+		}
+	}
+
+	/**
+	 * Sends hit/miss counters and sizes of thumbnail cache, optionally resetting the counters.
+	 */
+	private void thumbnailCacheStats(final boolean reset, final CallbackContext callbackContext) {
+		try {
+			final JSONObject stats = thumbnailCache.stats();
+			final JSONObject pipeline = bitmapPool.stats();
+			BitmapTransform.stats(pipeline);
+			stats.put("pipeline", pipeline);
+			if (reset) {
+				thumbnailCache.resetStats();
+				bitmapPool.resetStats();
+				BitmapTransform.resetStats();
+			}
+			callbackContext.success(stats);
+		} catch (JSONException e) {
 			Log.e(TAG, e.getMessage(), e);
 			callbackContext.error(e.getMessage());
 		}
 	}
 
-	private void cancel(final CallbackContext callbackContext) {
-		setPhotosCallbackContext(null);
+	/**
+	 * Sends performance counters of actions and their stages, along with the ones of thumbnail cache,
+	 * bitmap pipeline, scheduler lanes and tiles. See {@link PerfStats}.
+	 */
+	private void stats(final CallbackContext callbackContext) {
+		try {
+			final JSONObject stats = perfStats.stats();
+			stats.put("thumbnailCache", thumbnailCache.stats());
+			final JSONObject pipeline = bitmapPool.stats();
+			BitmapTransform.stats(pipeline);
+			stats.put("pipeline", pipeline);
+			stats.put("lanes", scheduler.stats());
+			stats.put("prefetch", prefetcher.stats());
+			final JSONObject tiles = tileDecoder.stats();
+			tiles.put("cache", tileCache.stats());
+			stats.put("tiles", tiles);
+			callbackContext.success(stats);
+		} catch (JSONException e) {
+			Log.e(TAG, e.getMessage(), e);
+			callbackContext.error(e.getMessage());
+		}
+	}
+
+	private void resetStats(final CallbackContext callbackContext) {
+		perfStats.reset();
+		thumbnailCache.resetStats();
+		bitmapPool.resetStats();
+		BitmapTransform.resetStats();
+		prefetcher.resetStats();
+		scheduler.resetStats();
+		tileDecoder.resetStats();
+		tileCache.resetStats();
 		callbackContext.success();
 	}
 
-	private synchronized CallbackContext getPhotosCallbackContext() {
-		return this.photosCallbackContext;
+	/**
+	 * Grants credits for the next bundles of running listing, see {@link Listing}.
+	 */
+	private void ack(final String requestId, final int credits, final CallbackContext callbackContext) {
+		final Listing listing;
+		synchronized (listings) {
+			listing = requestId != null ? listings.get(requestId) : null;
+		}
+		if (listing != null) listing.grant(credits);
+		callbackContext.success();
+	}
+
+	/**
+	 * Creates a listing of bundles of given size, with flow control and request ID taken from listing options.
+	 */
+	private static Listing newListing(final JSONObject options, final int limit, final CallbackContext callbackContext) {
+		final int interval = options != null ? options.optInt(P_LIST_INTERVAL, 30) : 30;
+		final int credits = options != null && limit > 0 ? options.optInt(P_LIST_CREDITS, 0) : 0;
+		final boolean adaptive = options != null && options.optBoolean(P_LIST_ADAPTIVE);
+		final int maxLimit = options != null ? options.optInt(P_LIST_MAX_LIMIT, limit * 8) : limit * 8;
+
+		String requestId = options != null ? options.optString(P_LIST_REQUEST_ID, null) : null;
+		if (requestId == null || requestId.isEmpty()) requestId = callbackContext.getCallbackId();
+		return new Listing(requestId, callbackContext, limit, credits, adaptive, maxLimit, interval);
+	}
+
+	/**
+	 * Queues a task of given action to given lane of {@link #scheduler}; if it's dropped, its caller gets an error.
+	 *
+	 * @param options options of the action, whose request ID the task may be dropped by, see {@link #cancel}.
+	 */
+	private void schedule(final Scheduler.Lane lane, final String action, final JSONObject options,
+			final CallbackContext callbackContext, final Runnable task) {
+		final String tag = options != null ? options.optString(P_LIST_REQUEST_ID, null) : null;
+		scheduler.execute(lane, tag, perfStats.queued(action, task), new Runnable() {
+			@Override
+			public void run() {
+				perfStats.cancelled(callbackContext);
+				callbackContext.error(E_DROPPED);
+			}
+		});
+	}
+
+	private static boolean isImage(String mimeType) {
+		return mimeType != null && mimeType.startsWith("image/");
+	}
+
+	/**
+	 * Hands given photos over to {@link #prefetcher} with thumbnail options of listing, and clears them.
+	 */
+	private void prefetch(final List<String> photoIds, final int size, final ImageEncoding encoding) {
+		if (photoIds.isEmpty()) return;
+		prefetcher.offer(photoIds, size, encoding);
+		photoIds.clear();
+	}
+
+	/**
+	 * Steers prefetch to given photos, which client is about to show, e.g. the ones around its scroll position.
+	 * See {@link ThumbnailPrefetcher}.
+	 */
+	private void prefetchHint(final JSONArray photoIds, final JSONObject options, final CallbackContext callbackContext) {
+		final List<String> ids = new ArrayList<>();
+		if (photoIds != null)
+			for (int i = 0; i < photoIds.length(); ++i) {
+				final String photoId = photoIds.optString(i, null);
+				if (photoId != null && !photoId.isEmpty() && !"null".equalsIgnoreCase(photoId)) ids.add(photoId);
+			}
+		try {
+			prefetcher.hint(ids, options != null ? options.optInt(P_SIZE, DEF_SIZE) : DEF_SIZE,
+					encoding(options, DEF_QUALITY));
+			callbackContext.success();
+		} catch (IllegalArgumentException e) {
+			callbackContext.error(e.getMessage());
+		}
+	}
+
+	/**
+	 * Sends a bundle of running listing, measuring the time it takes along with waits of flow control.
+	 *
+	 * @return {@code false} if listing is cancelled.
+	 */
+	private boolean sendBundle(final Listing listing, final JSONArray bundle) throws InterruptedException {
+		final long start = perfStats.begin("send");
+		try {
+			return listing.send(bundle);
+		} finally {
+			perfStats.end("send", start, 0);
+		}
 	}
 
-	private synchronized void setPhotosCallbackContext(CallbackContext photosCallbackContext) {
-		this.photosCallbackContext = photosCallbackContext;
+	/**
+	 * @return an empty batch of listed items in the layout requested by listing options.
+	 */
+	private static MediaRowMapper.Batch newBatch(final JSONObject options) {
+		return new MediaRowMapper.Batch(
+				options != null && P_LIST_LAYOUT_COLUMNAR.equals(options.optString(P_LIST_LAYOUT, null)));
 	}
 
-	private String repeatText(int count, String text, String separator) {
+	private static MediaRowMapper.Binding bindRows(final MediaRowMapper mapper, final Cursor cursor,
+			final JSONObject options) {
+		return mapper.bind(cursor, options == null || options.optBoolean(P_LIST_DATES, true));
+	}
+
+	/**
+	 * Registers given listing as running one.
+	 *
+	 * @return an error message if listing cannot be started, {@code null} otherwise.
+	 */
+	private String startListing(Listing listing) {
+		synchronized (listings) {
+			if (listings.containsKey(listing.getId())) return E_REQUEST_ID_BUSY;
+			if (listings.size() >= maxListings) return E_PHOTO_BUSY;
+			listings.put(listing.getId(), listing);
+			return null;
+		}
+	}
+
+	private void finishListing(Listing listing) {
+		synchronized (listings) {
+			if (listings.get(listing.getId()) == listing) listings.remove(listing.getId());
+		}
+	}
+
+	/**
+	 * Runs a query with the row limit pushed down to the provider: through query arguments
+	 * since Android R, which rejects LIMIT in sort order, and through sort order before that,
+	 * where MediaProvider ignores the bundled limit.
+	 */
+	private Cursor queryPage(ContentResolver resolver, Uri uri, String[] projection,
+			String selection, String[] selectionArgs, String sortOrder, int limit) {
+		final long start = perfStats.begin("query");
+		final Cursor cursor;
+		try {
+			if (limit <= 0)
+				cursor = resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+			else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+				final Bundle queryArgs = new Bundle();
+				queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+				queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+				queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+				queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+				cursor = resolver.query(uri, projection, queryArgs, null);
+			} else
+				cursor = resolver.query(uri, projection, selection, selectionArgs, sortOrder + " LIMIT " + limit);
+		} finally {
+			perfStats.end("query", start, 0);
+		}
+		if (cursor == null) throw new IllegalStateException("MediaStore query failed: " + uri);
+		return cursor;
+	}
+
+	private static String repeatText(int count, String text, String separator) {
 		if (count <= 0 || text == null || text.isEmpty()) return "";
 		final StringBuilder result = new StringBuilder();
 		for (int i = 0; i < count; ++i) {
@@ -620,4 +1670,17 @@ public class Photos extends CordovaPlugin {
 	private void requestPhotoLibraryAuthorization(final CallbackContext callbackContext) {
 		callbackContext.success();
 	}
+
+	/**
+	 * Attributes of a photo that its thumbnails depend on.
+	 */
+	private static final class MediaInfo {
+		final int orientation;
+		final long modified;
+
+		MediaInfo(int orientation, long modified) {
+			this.orientation = orientation;
+			this.modified = modified;
+		}
+	}
 }
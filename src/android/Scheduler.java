@@ -0,0 +1,259 @@
+package com.domax.cordova;
+
+import android.os.Process;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin-owned thread pools, one per {@link Lane} of work, so that long copies and full-resolution decodes
+ * don't delay thumbnails that are on screen, nor listings that fill it.
+ * <p>
+ * Each lane has its own threads of its own priority and a bounded queue. A task that doesn't fit into a full queue
+ * is dropped, and so is the oldest queued one of LIFO lanes, which run the latest requests first, because these are
+ * for the cells that are on screen now. Queued tasks may be dropped by their tags as well, once client cancels them.
+ * Either way a task is dropped, its drop callback is run instead of it, so that its caller is answered.
+ */
+final class Scheduler {
+
+	enum Lane {
+		/**
+		 * Listings and other metadata queries; listings wait for client credits on their threads.
+		 */
+		LISTING("listing", Process.THREAD_PRIORITY_DEFAULT, false, 64),
+		/**
+		 * Thumbnails that client waits for.
+		 */
+		THUMBNAIL("thumbnail", Process.THREAD_PRIORITY_DEFAULT, true, 256),
+		/**
+		 * Speculative thumbnails, see {@link ThumbnailPrefetcher}.
+		 */
+		PREFETCH("prefetch", Process.THREAD_PRIORITY_LOWEST, false, 64),
+		/**
+		 * Frames of videos; each extraction holds a hardware decoder, and these are few.
+		 */
+		VIDEO("video", Process.THREAD_PRIORITY_DEFAULT, true, 128),
+		/**
+		 * Large images, video copies and cache maintenance.
+		 */
+		IO("io", Process.THREAD_PRIORITY_BACKGROUND, false, 32);
+
+		final String name;
+		final int priority;
+		final boolean lifo;
+		final int capacity;
+
+		Lane(String name, int priority, boolean lifo, int capacity) {
+			this.name = name;
+			this.priority = priority;
+			this.lifo = lifo;
+			this.capacity = capacity;
+		}
+	}
+
+	private final Pool[] pools = new Pool[Lane.values().length];
+
+	/**
+	 * @param listings a maximal amount of listings that run at once.
+	 */
+	Scheduler(int listings) {
+		final int cores = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+		for (Lane lane : Lane.values()) {
+			final int threads;
+			switch (lane) {
+				case LISTING:
+					// Each listing may wait for credits, so that one more thread serves the other queries meanwhile
+					threads = listings + 1;
+					break;
+				case THUMBNAIL:
+					threads = cores;
+					break;
+				case PREFETCH:
+					threads = Math.max(cores / 2, 1);
+					break;
+				case VIDEO:
+					threads = Math.min(cores, 2);
+					break;
+				default:
+					threads = 2;
+			}
+			pools[lane.ordinal()] = new Pool(lane, threads, lane.capacity);
+		}
+	}
+
+	/**
+	 * Queues given task to given lane.
+	 *
+	 * @param tag    a tag to {@link #drop} the task by, may be {@code null}.
+	 * @param onDrop a callback to run if the task is dropped, may be {@code null}.
+	 * @throws RejectedExecutionException if scheduler is shut down.
+	 */
+	void execute(Lane lane, String tag, Runnable task, Runnable onDrop) {
+		pools[lane.ordinal()].execute(new Job(lane, tag, task, onDrop));
+	}
+
+	int threads(Lane lane) {
+		return pools[lane.ordinal()].getMaximumPoolSize();
+	}
+
+	/**
+	 * Drops queued tasks of given tag from all the lanes; running tasks are not affected.
+	 *
+	 * @return an amount of dropped tasks.
+	 */
+	int drop(String tag) {
+		if (tag == null || tag.isEmpty()) return 0;
+		final List<Job> dropped = new ArrayList<>();
+		for (Pool pool : pools)
+			for (Iterator<Runnable> it = pool.getQueue().iterator(); it.hasNext(); ) {
+				final Job job = (Job) it.next();
+				if (tag.equals(job.tag) && pool.getQueue().remove(job)) dropped.add(job);
+			}
+		for (Job job : dropped) job.drop();
+		return dropped.size();
+	}
+
+	JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		for (Pool pool : pools) result.put(pool.lane.name, pool.stats());
+		return result;
+	}
+
+	void resetStats() {
+		for (Pool pool : pools) pool.resetStats();
+	}
+
+	/**
+	 * Stops all the lanes; queued tasks are dropped.
+	 */
+	void shutdown() {
+		final List<Runnable> dropped = new ArrayList<>();
+		for (Pool pool : pools) dropped.addAll(pool.shutdownNow());
+		for (Runnable job : dropped) ((Job) job).drop();
+	}
+
+	/**
+	 * A task with what it takes to account for and drop it.
+	 */
+	private final class Job implements Runnable {
+		final Lane lane;
+		final String tag;
+		final Runnable task;
+		final Runnable onDrop;
+		final long queuedAt = System.nanoTime();
+
+		Job(Lane lane, String tag, Runnable task, Runnable onDrop) {
+			this.lane = lane;
+			this.tag = tag;
+			this.task = task;
+			this.onDrop = onDrop;
+		}
+
+		@Override
+		public void run() {
+			pools[lane.ordinal()].started(System.nanoTime() - queuedAt);
+			task.run();
+		}
+
+		void drop() {
+			pools[lane.ordinal()].dropped.incrementAndGet();
+			if (onDrop != null) onDrop.run();
+		}
+	}
+
+	/**
+	 * Queue of LIFO lane: new tasks go first, and the last one makes room for them when it's full.
+	 */
+	private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+		LifoQueue(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		public boolean offer(Runnable job) {
+			while (!offerFirst(job)) {
+				final Runnable stale = pollLast();
+				if (stale != null) ((Job) stale).drop();
+			}
+			return true;
+		}
+	}
+
+	private static final class Pool extends ThreadPoolExecutor {
+		final Lane lane;
+		final AtomicLong started = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final AtomicLong waitNanos = new AtomicLong();
+		final AtomicLong maxWaitNanos = new AtomicLong();
+
+		Pool(final Lane lane, int threads, int capacity) {
+			super(threads, threads, 30, TimeUnit.SECONDS,
+					lane.lifo ? new LifoQueue(capacity) : new LinkedBlockingDeque<Runnable>(capacity),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(final Runnable runnable) {
+							return new Thread(new Runnable() {
+								@Override
+								public void run() {
+									Process.setThreadPriority(lane.priority);
+									runnable.run();
+								}
+							}, "Photos-" + lane.name + "-" + count.incrementAndGet());
+						}
+					},
+					new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(Runnable job, ThreadPoolExecutor executor) {
+							if (executor.isShutdown()) throw new RejectedExecutionException("Scheduler is shut down");
+							((Job) job).drop();
+						}
+					});
+			this.lane = lane;
+			allowCoreThreadTimeOut(true);
+		}
+
+		void started(long wait) {
+			started.incrementAndGet();
+			waitNanos.addAndGet(wait);
+			long max;
+			while (wait > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, wait)) {
+				// Retry until either the maximum is updated or a larger one is set by another thread
+			}
+		}
+
+		JSONObject stats() throws JSONException {
+			final JSONObject result = new JSONObject();
+			final long started = this.started.get();
+			result.put("threads", getMaximumPoolSize());
+			result.put("active", getActiveCount());
+			result.put("queued", getQueue().size());
+			result.put("capacity", lane.capacity);
+			result.put("started", started);
+			result.put("dropped", dropped.get());
+			result.put("waitMeanMs", started > 0 ? waitNanos.get() / 1000000.0 / started : 0);
+			result.put("waitMaxMs", maxWaitNanos.get() / 1000000.0);
+			return result;
+		}
+
+		void resetStats() {
+			started.set(0);
+			dropped.set(0);
+			waitNanos.set(0);
+			maxWaitNanos.set(0);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.domax.cordova;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * State of a running batch of thumbnails: its callback, pending IDs and cancellation flags.
+ * <p>
+ * Results are streamed to the callback in completion order as multipart {@code [id, data]} messages,
+ * failures as kept errors, and the batch is finished with a single-part message as soon as the last
+ * pending ID is either completed or dropped.
+ */
+final class ThumbnailBatch {
+
+	private final String id;
+	private final CallbackContext callbackContext;
+	private final Set<String> dropped = new HashSet<>();
+	private int pending;
+	private boolean cancelled;
+
+	ThumbnailBatch(String id, CallbackContext callbackContext, int size) {
+		this.id = id;
+		this.callbackContext = callbackContext;
+		this.pending = size;
+	}
+
+	String getId() {
+		return id;
+	}
+
+	CallbackContext getCallbackContext() {
+		return callbackContext;
+	}
+
+	/**
+	 * @return whether thumbnail of given photo is still needed.
+	 */
+	synchronized boolean isWanted(String photoId) {
+		return !cancelled && !dropped.contains(photoId);
+	}
+
+	synchronized void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Drops given photo IDs from the batch, so that their thumbnails are neither generated nor sent.
+	 */
+	synchronized void drop(List<String> photoIds) {
+		dropped.addAll(photoIds);
+	}
+
+	/**
+	 * Sends generated thumbnail, unless it's been dropped meanwhile.
+	 *
+	 * @return {@code true} if the batch is complete.
+	 */
+	boolean complete(String photoId, PluginResult data) {
+		if (isWanted(photoId)) {
+			final List<PluginResult> parts = new ArrayList<>(2);
+			parts.add(new PluginResult(PluginResult.Status.OK, photoId));
+			parts.add(data);
+			final PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+			result.setKeepCallback(true);
+			callbackContext.sendPluginResult(result);
+		}
+		return countDown();
+	}
+
+	/**
+	 * Sends an error of given photo, unless it's been dropped meanwhile.
+	 *
+	 * @return {@code true} if the batch is complete.
+	 */
+	boolean fail(String photoId, PluginResult error) {
+		if (isWanted(photoId)) {
+			error.setKeepCallback(true);
+			callbackContext.sendPluginResult(error);
+		}
+		return countDown();
+	}
+
+	/**
+	 * Accounts a photo that doesn't need processing.
+	 *
+	 * @return {@code true} if the batch is complete.
+	 */
+	boolean skip() {
+		return countDown();
+	}
+
+	private boolean countDown() {
+		synchronized (this) {
+			if (--pending > 0) return false;
+		}
+		callbackContext.success(id);
+		return true;
+	}
+}
@@ -0,0 +1,274 @@
+package com.domax.cordova;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of encoded thumbnails: a byte-bounded in-memory LRU backed by a size-capped directory on disk.
+ * <p>
+ * Keys include everything the encoded data depends on, including the date of last modification of the source,
+ * so that modified items are simply missed and their stale entries are evicted in LRU order.
+ * All methods are thread-safe.
+ */
+final class ThumbnailCache {
+
+	private static final String TAG = ThumbnailCache.class.getSimpleName();
+	private static final String EXT = ".bin";
+	private static final String EXT_TMP = ".tmp";
+
+	private final LruCache<String, byte[]> memory;
+	private final File dir;
+	private final long maxDiskBytes;
+	/**
+	 * Disk entries in access order, with their sizes; loaded lazily from {@link #dir}.
+	 */
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+	private boolean diskLoaded;
+	private long diskBytes;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+
+	/**
+	 * @param dir            a directory for disk tier.
+	 * @param maxMemoryBytes a maximal size of memory tier in bytes, {@code 0} disables it.
+	 * @param maxDiskBytes   a maximal size of disk tier in bytes, {@code 0} disables it.
+	 */
+	ThumbnailCache(File dir, int maxMemoryBytes, long maxDiskBytes) {
+		this.dir = dir;
+		this.maxDiskBytes = maxDiskBytes;
+		this.memory = maxMemoryBytes > 0 ? new LruCache<String, byte[]>(maxMemoryBytes) {
+			@Override
+			protected int sizeOf(String key, byte[] value) {
+				return value.length;
+			}
+		} : null;
+	}
+
+	/**
+	 * Builds a cache key of a thumbnail. It's also used as a file name, so it's made of safe characters only.
+	 */
+	static String key(String id, int dimension, int quality, int orientation, String format, long modified) {
+		return id.replaceAll("[^\\w-]", "_") + '_' + dimension + '_' + quality + '_' + orientation
+				+ '_' + format + '_' + modified;
+	}
+
+	/**
+	 * @return encoded thumbnail or {@code null} if it isn't cached.
+	 */
+	byte[] get(String key) {
+		if (memory != null) {
+			final byte[] data = memory.get(key);
+			if (data != null) {
+				memoryHits.incrementAndGet();
+				return data;
+			}
+		}
+		final byte[] data = readDisk(key);
+		if (data != null) {
+			diskHits.incrementAndGet();
+			if (memory != null) memory.put(key, data);
+			return data;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Opens cached thumbnail for streaming: from memory without copying, or right from its file on disk.
+	 *
+	 * @return stream of encoded thumbnail or {@code null} if it isn't cached.
+	 */
+	InputStream open(String key) {
+		if (memory != null) {
+			final byte[] data = memory.get(key);
+			if (data != null) {
+				memoryHits.incrementAndGet();
+				return new ByteArrayInputStream(data);
+			}
+		}
+		final File file = getFile(key);
+		if (file != null) {
+			try {
+				final InputStream in = new FileInputStream(file);
+				diskHits.incrementAndGet();
+				return in;
+			} catch (IOException e) {
+				Log.w(TAG, e.getMessage(), e);
+				removeDisk(key);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	void put(String key, byte[] data) {
+		if (data == null) return;
+		puts.incrementAndGet();
+		if (memory != null) memory.put(key, data);
+		writeDisk(key, data);
+	}
+
+	/**
+	 * @return a cached file of given key, if any, refreshing its LRU position.
+	 */
+	File getFile(String key) {
+		synchronized (disk) {
+			loadDisk();
+			return disk.get(key) != null ? new File(dir, key + EXT) : null;
+		}
+	}
+
+	void clear() {
+		if (memory != null) memory.evictAll();
+		synchronized (disk) {
+			loadDisk();
+			for (String key : disk.keySet())
+				//noinspection ResultOfMethodCallIgnored
+				new File(dir, key + EXT).delete();
+			disk.clear();
+			diskBytes = 0;
+		}
+	}
+
+	JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		result.put("memoryHits", memoryHits.get());
+		result.put("diskHits", diskHits.get());
+		result.put("misses", misses.get());
+		result.put("puts", puts.get());
+		result.put("memoryBytes", memory != null ? memory.size() : 0);
+		result.put("memoryMaxBytes", memory != null ? memory.maxSize() : 0);
+		synchronized (disk) {
+			result.put("diskEntries", disk.size());
+			result.put("diskBytes", diskBytes);
+		}
+		result.put("diskMaxBytes", maxDiskBytes);
+		return result;
+	}
+
+	void resetStats() {
+		memoryHits.set(0);
+		diskHits.set(0);
+		misses.set(0);
+		puts.set(0);
+	}
+
+	private byte[] readDisk(String key) {
+		final File file;
+		synchronized (disk) {
+			loadDisk();
+			if (disk.get(key) == null) return null;
+			file = new File(dir, key + EXT);
+		}
+		try (FileInputStream in = new FileInputStream(file)) {
+			final byte[] data = new byte[(int) file.length()];
+			int read = 0;
+			while (read < data.length) {
+				final int n = in.read(data, read, data.length - read);
+				if (n < 0) throw new IOException("Unexpected end of " + file);
+				read += n;
+			}
+			//noinspection ResultOfMethodCallIgnored
+			file.setLastModified(System.currentTimeMillis());
+			return data;
+		} catch (IOException e) {
+			Log.w(TAG, e.getMessage(), e);
+			removeDisk(key);
+			return null;
+		}
+	}
+
+	private void writeDisk(String key, byte[] data) {
+		if (maxDiskBytes <= 0 || data.length > maxDiskBytes) return;
+		final File tmp = new File(dir, key + EXT_TMP + Thread.currentThread().getId());
+		final File file = new File(dir, key + EXT);
+		try {
+			synchronized (disk) {
+				loadDisk();
+			}
+			try (FileOutputStream out = new FileOutputStream(tmp)) {
+				out.write(data);
+			}
+			synchronized (disk) {
+				if (!tmp.renameTo(file)) throw new IOException("Cannot rename " + tmp + " to " + file);
+				final Long previous = disk.put(key, (long) data.length);
+				diskBytes += data.length - (previous != null ? previous : 0);
+				trimDisk();
+			}
+		} catch (IOException e) {
+			Log.w(TAG, e.getMessage(), e);
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+		}
+	}
+
+	private void removeDisk(String key) {
+		synchronized (disk) {
+			final Long size = disk.remove(key);
+			if (size != null) diskBytes -= size;
+			//noinspection ResultOfMethodCallIgnored
+			new File(dir, key + EXT).delete();
+		}
+	}
+
+	/**
+	 * Evicts least recently used disk entries until disk tier fits its limit. Must be called holding {@link #disk}.
+	 */
+	private void trimDisk() {
+		while (diskBytes > maxDiskBytes && !disk.isEmpty()) {
+			final Map.Entry<String, Long> eldest = disk.entrySet().iterator().next();
+			disk.remove(eldest.getKey());
+			diskBytes -= eldest.getValue();
+			//noinspection ResultOfMethodCallIgnored
+			new File(dir, eldest.getKey() + EXT).delete();
+		}
+	}
+
+	/**
+	 * Indexes files of disk tier in order of their last access. Must be called holding {@link #disk}.
+	 */
+	private void loadDisk() {
+		if (diskLoaded) return;
+		diskLoaded = true;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			Log.w(TAG, "Cannot create thumbnail cache directory " + dir);
+			return;
+		}
+		final File[] files = dir.listFiles();
+		if (files == null) return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				final long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+		for (File file : files) {
+			final String name = file.getName();
+			if (name.endsWith(EXT)) {
+				disk.put(name.substring(0, name.length() - EXT.length()), file.length());
+				diskBytes += file.length();
+			} else //noinspection ResultOfMethodCallIgnored
+				file.delete();
+		}
+		trimDisk();
+	}
+}
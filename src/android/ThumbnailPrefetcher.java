@@ -0,0 +1,171 @@
+package com.domax.cordova;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Speculatively generates thumbnails into {@link ThumbnailCache} ahead of their requests, on low-priority threads.
+ * <p>
+ * Pending photos form a window of bounded size: listings append their first items to it, while hints of client
+ * replace it with photos around its scroll position, so that prefetch follows the scroll rather than listing order.
+ * Window is worked off in order by at most as many tasks of given lane at once as it has threads; photos whose
+ * thumbnails are already cached are cheap to skip, since generator checks the cache first. Tasks that the lane drops
+ * release their slots, so that the next offer spawns them again.
+ */
+final class ThumbnailPrefetcher {
+
+	private static final String TAG = ThumbnailPrefetcher.class.getSimpleName();
+
+	/**
+	 * Generates and caches thumbnail of a photo, unless it's cached already.
+	 */
+	interface Generator {
+		void generate(String photoId, int size, ImageEncoding encoding) throws Exception;
+	}
+
+	private final Generator generator;
+	private final Scheduler scheduler;
+	private final Scheduler.Lane lane;
+	private final int threads;
+	private final int maxPending;
+
+	private final ArrayDeque<Task> pending = new ArrayDeque<>();
+	private final Set<String> keys = new HashSet<>();
+	private int running;
+	private long generated;
+	private long failed;
+	private long dropped;
+
+	private final Runnable worker = new Runnable() {
+		@Override
+		public void run() {
+			Task task;
+			while ((task = next()) != null) {
+				try {
+					generator.generate(task.photoId, task.size, task.encoding);
+					synchronized (ThumbnailPrefetcher.this) {
+						++generated;
+					}
+				} catch (Exception e) {
+					Log.w(TAG, e.getMessage(), e);
+					synchronized (ThumbnailPrefetcher.this) {
+						++failed;
+					}
+				}
+			}
+		}
+	};
+
+	private final Runnable release = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (ThumbnailPrefetcher.this) {
+				--running;
+			}
+		}
+	};
+
+	/**
+	 * @param lane       a lane of low-priority tasks.
+	 * @param maxPending a maximal size of the window.
+	 */
+	ThumbnailPrefetcher(Generator generator, Scheduler scheduler, Scheduler.Lane lane, int maxPending) {
+		this.generator = generator;
+		this.scheduler = scheduler;
+		this.lane = lane;
+		this.threads = Math.max(scheduler.threads(lane), 1);
+		this.maxPending = Math.max(maxPending, 1);
+	}
+
+	/**
+	 * Appends given photos to the window, as long as it's not full.
+	 */
+	synchronized void offer(List<String> photoIds, int size, ImageEncoding encoding) {
+		for (String photoId : photoIds) {
+			if (pending.size() >= maxPending) {
+				++dropped;
+				continue;
+			}
+			final Task task = new Task(photoId, size, encoding);
+			if (keys.add(task.key)) pending.addLast(task);
+		}
+		spawn();
+	}
+
+	/**
+	 * Replaces the window with given photos, which are the ones client is about to show.
+	 */
+	synchronized void hint(List<String> photoIds, int size, ImageEncoding encoding) {
+		clear();
+		offer(photoIds, size, encoding);
+	}
+
+	/**
+	 * Drops the window; thumbnails being generated at the moment are completed.
+	 */
+	synchronized void clear() {
+		dropped += pending.size();
+		pending.clear();
+		keys.clear();
+	}
+
+	synchronized JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		result.put("pending", pending.size());
+		result.put("running", running);
+		result.put("generated", generated);
+		result.put("failed", failed);
+		result.put("dropped", dropped);
+		return result;
+	}
+
+	synchronized void resetStats() {
+		generated = 0;
+		failed = 0;
+		dropped = 0;
+	}
+
+	private void spawn() {
+		while (running < threads && running < pending.size()) {
+			try {
+				// Slot is taken first, since a task that doesn't fit into the lane is dropped and released right away
+				final int spawned = ++running;
+				scheduler.execute(lane, null, worker, release);
+				if (running < spawned) return;
+			} catch (RejectedExecutionException e) {
+				// Scheduler is shut down along with the plugin
+				--running;
+				return;
+			}
+		}
+	}
+
+	private synchronized Task next() {
+		final Task task = pending.pollFirst();
+		if (task != null) keys.remove(task.key);
+		else --running;
+		return task;
+	}
+
+	private static final class Task {
+		final String photoId;
+		final int size;
+		final ImageEncoding encoding;
+		final String key;
+
+		Task(String photoId, int size, ImageEncoding encoding) {
+			this.photoId = photoId;
+			this.size = size;
+			this.encoding = encoding;
+			this.key = photoId + '/' + size + '/' + encoding.quality + '/' + encoding.key();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes rectangular regions of full-resolution images, so that zoomable viewers decode only the visible tiles
+ * at the sample level they are displayed at, instead of whole originals.
+ * <p>
+ * Region decoders parse image headers once, so they are kept open for a few recently used images, and closed as soon
+ * as they are evicted. Regions are given in coordinates of the image as it's displayed, that is after rotation
+ * by its orientation, and are mapped to the stored image here; decoded regions are not rotated though.
+ * All methods are thread-safe.
+ */
+final class TileDecoder {
+
+	private static final String TAG = TileDecoder.class.getSimpleName();
+
+	static final String E_RECT = "Tile is out of image bounds";
+	static final String E_FORMAT = "Image format doesn't support tiles";
+
+	/**
+	 * The largest sample level, which is 1:1024 downscale.
+	 */
+	static final int MAX_LEVEL = 10;
+
+	private final LruCache<String, Entry> decoders;
+
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong tiles = new AtomicLong();
+
+	/**
+	 * @param maxDecoders a maximal amount of images to keep decoders open for.
+	 */
+	TileDecoder(int maxDecoders) {
+		decoders = new LruCache<String, Entry>(Math.max(maxDecoders, 1)) {
+			@Override
+			protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+				oldValue.close();
+			}
+		};
+	}
+
+	/**
+	 * Decodes a region of given image.
+	 *
+	 * @param key         a key of the image that changes along with it, to cache its decoder by.
+	 * @param x           a left edge of the region in displayed image.
+	 * @param y           a top edge of the region in displayed image.
+	 * @param width       a width of the region in displayed image.
+	 * @param height      a height of the region in displayed image.
+	 * @param level       a sample level, the region is decoded downscaled by {@code 2^level}.
+	 * @param orientation a rotation of displayed image in degrees.
+	 * @param config      a preferred pixel config, or {@code null}.
+	 * @return decoded region, which is still to be rotated by {@code orientation}, or {@code null} if there's no image.
+	 * @throws IllegalArgumentException if the region doesn't overlap the image.
+	 */
+	Bitmap decode(ContentResolver resolver, Uri uri, String key, int x, int y, int width, int height, int level,
+			int orientation, Bitmap.Config config) throws IOException {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = 1 << Math.min(Math.max(level, 0), MAX_LEVEL);
+		if (config != null) options.inPreferredConfig = config;
+		// Decoder may be evicted and closed by another thread in between, then it's opened again
+		for (int attempt = 0; attempt < 2; ++attempt) {
+			final Entry entry = open(resolver, uri, key);
+			if (entry == null) return null;
+			final Rect rect = storedRect(x, y, width, height, entry.width, entry.height, orientation);
+			if (rect.isEmpty()) throw new IllegalArgumentException(E_RECT);
+			synchronized (entry) {
+				if (entry.decoder.isRecycled()) continue;
+				final Bitmap tile = entry.decoder.decodeRegion(rect, options);
+				tiles.incrementAndGet();
+				return tile;
+			}
+		}
+		throw new IllegalStateException("Tile decoder was closed");
+	}
+
+	void clear() {
+		decoders.evictAll();
+	}
+
+	JSONObject stats() throws JSONException {
+		final JSONObject result = new JSONObject();
+		result.put("decoders", decoders.size());
+		result.put("maxDecoders", decoders.maxSize());
+		result.put("opened", opened.get());
+		result.put("reused", reused.get());
+		result.put("tiles", tiles.get());
+		return result;
+	}
+
+	void resetStats() {
+		opened.set(0);
+		reused.set(0);
+		tiles.set(0);
+	}
+
+	private Entry open(ContentResolver resolver, Uri uri, String key) throws IOException {
+		final Entry cached = decoders.get(key);
+		if (cached != null) {
+			reused.incrementAndGet();
+			return cached;
+		}
+		final ParcelFileDescriptor fd = resolver.openFileDescriptor(uri, "r");
+		if (fd == null) return null;
+		final BitmapRegionDecoder decoder;
+		try {
+			decoder = newDecoder(fd);
+		} catch (IOException e) {
+			// Decoder throws it for formats it can't decode regions of, like GIF
+			Log.w(TAG, e.getMessage(), e);
+			close(fd);
+			throw new IllegalStateException(E_FORMAT);
+		}
+		if (decoder == null) {
+			close(fd);
+			throw new IllegalStateException(E_FORMAT);
+		}
+		opened.incrementAndGet();
+		final Entry entry = new Entry(fd, decoder);
+		// Another thread may have opened the same image meanwhile, then the one put last wins
+		decoders.put(key, entry);
+		return entry;
+	}
+
+	@SuppressWarnings("deprecation")
+	private static BitmapRegionDecoder newDecoder(ParcelFileDescriptor fd) throws IOException {
+		return BitmapRegionDecoder.newInstance(fd.getFileDescriptor(), false);
+	}
+
+	private static void close(ParcelFileDescriptor fd) {
+		try {
+			fd.close();
+		} catch (IOException e) {
+			Log.w(TAG, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Maps a region of displayed image to the stored one, clipping it by image bounds.
+	 *
+	 * @param imageWidth  a width of stored image.
+	 * @param imageHeight a height of stored image.
+	 */
+	static Rect storedRect(int x, int y, int width, int height, int imageWidth, int imageHeight, int orientation) {
+		final Rect rect;
+		switch ((orientation % 360 + 360) % 360) {
+			case 90:
+				rect = new Rect(y, imageHeight - x - width, y + height, imageHeight - x);
+				break;
+			case 180:
+				rect = new Rect(imageWidth - x - width, imageHeight - y - height, imageWidth - x, imageHeight - y);
+				break;
+			case 270:
+				rect = new Rect(imageWidth - y - height, x, imageWidth - y, x + width);
+				break;
+			default:
+				rect = new Rect(x, y, x + width, y + height);
+		}
+		if (!rect.intersect(0, 0, imageWidth, imageHeight)) rect.setEmpty();
+		return rect;
+	}
+
+	/**
+	 * An open decoder along with the file it reads. Decodes and closing are serialized on it, while image dimensions
+	 * are read once it's opened, so that they are known without the lock.
+	 */
+	private static final class Entry {
+		final ParcelFileDescriptor fd;
+		final BitmapRegionDecoder decoder;
+		final int width;
+		final int height;
+
+		Entry(ParcelFileDescriptor fd, BitmapRegionDecoder decoder) {
+			this.fd = fd;
+			this.decoder = decoder;
+			this.width = decoder.getWidth();
+			this.height = decoder.getHeight();
+		}
+
+		synchronized void close() {
+			decoder.recycle();
+			TileDecoder.close(fd);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.domax.cordova;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Extracts frames of a video for its thumbnails: a poster frame, or a strip of frames evenly spread over it.
+ * <p>
+ * Since Android O MR1 frames are downscaled by the extractor itself, so that full-size frames of 4K videos
+ * are never allocated; before that they are extracted in full size, and it's up to caller to scale them.
+ * Frames come already rotated by orientation of the video. Extractor holds a decoder, and decoders are few
+ * on a device, so it has to be closed as soon as frames are taken.
+ */
+final class VideoFrames implements Closeable {
+
+	private final ParcelFileDescriptor fd;
+	private final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+
+	private VideoFrames(ParcelFileDescriptor fd) {
+		this.fd = fd;
+	}
+
+	/**
+	 * @return an extractor of given video, or {@code null} if there's no video.
+	 */
+	static VideoFrames open(ContentResolver resolver, Uri uri) throws IOException {
+		final ParcelFileDescriptor fd = resolver.openFileDescriptor(uri, "r");
+		if (fd == null) return null;
+		final VideoFrames frames = new VideoFrames(fd);
+		try {
+			frames.retriever.setDataSource(fd.getFileDescriptor());
+			return frames;
+		} catch (RuntimeException e) {
+			frames.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a duration of video in millis, or {@code 0} if it's unknown.
+	 */
+	long duration() {
+		final String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+		try {
+			return duration != null ? Math.max(Long.parseLong(duration), 0) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Extracts a sync frame closest to given time.
+	 *
+	 * @param time a time in millis, or negative to let extractor pick a representative frame.
+	 * @param size a maximal size of frame both for width and height, which extractor may not respect, see above.
+	 * @return a frame, or {@code null} if it can't be extracted.
+	 */
+	Bitmap frame(long time, int size) {
+		final long timeUs = time >= 0 ? time * 1000 : -1;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1)
+			return retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, size, size);
+		return retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+	}
+
+	/**
+	 * Extracts given amount of frames from the middles of equal parts of video, and draws them left to right
+	 * into a single bitmap, each one fitted into {@code size} x {@code size} box. Frames that can't be extracted
+	 * are left blank.
+	 *
+	 * @return a strip of frames, or {@code null} if none of them can be extracted.
+	 */
+	Bitmap strip(int count, int size, BitmapPool pool) {
+		final long duration = duration();
+		final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		Bitmap strip = null;
+		Canvas canvas = null;
+		int width = 0;
+		for (int i = 0; i < count; ++i) {
+			final Bitmap frame = frame(duration > 0 ? duration * (2 * i + 1) / (2 * count) : -1, size);
+			if (frame == null) continue;
+			if (strip == null) {
+				// All the frames of a video are of the same size, so the first one sizes the cells
+				final double scale = BitmapLoader.fitScale(frame.getWidth(), frame.getHeight(), size, size);
+				width = Math.max((int) Math.round(frame.getWidth() * scale), 1);
+				final int height = Math.max((int) Math.round(frame.getHeight() * scale), 1);
+				strip = pool.get(width * count, height, Bitmap.Config.ARGB_8888);
+				canvas = new Canvas(strip);
+			}
+			canvas.drawBitmap(frame, null, new Rect(width * i, 0, width * (i + 1), strip.getHeight()), paint);
+			pool.put(frame);
+		}
+		return strip;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			retriever.release();
+		} finally {
+			fd.close();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.domax.cordova;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Size-capped LRU store of exported videos.
+ * <p>
+ * Exports are named by video ID and modification date, so that a video is copied only once as long as it's
+ * not modified. Files are copied by channel transfers in large chunks, into partial files that are renamed
+ * when complete. Least recently used exports are deleted as soon as the store exceeds its size.
+ */
+final class VideoStore {
+
+	private static final String TAG = VideoStore.class.getSimpleName();
+	private static final String PREFIX = "video_";
+	private static final String EXT_PART = ".part";
+	private static final long CHUNK = 8 * 1024 * 1024;
+
+	interface ProgressListener {
+		void onProgress(long copied, long total);
+	}
+
+	private final File dir;
+	private final long maxBytes;
+
+	/**
+	 * @param dir      a directory of the store.
+	 * @param maxBytes a size of the store in bytes. The latest export is kept even if it's larger.
+	 */
+	VideoStore(File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Removes partial files of interrupted exports and trims the store to its size.
+	 */
+	synchronized void cleanup() {
+		final File[] files = dir.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.getName().endsWith(EXT_PART))
+					//noinspection ResultOfMethodCallIgnored
+					file.delete();
+		trim(null);
+	}
+
+	/**
+	 * @return a complete export of given video, or {@code null} if there's none.
+	 */
+	synchronized File get(String id, long modified, String ext, long size) {
+		final File file = new File(dir, name(id, modified, ext));
+		if (!file.isFile() || (size > 0 && file.length() != size)) return null;
+		//noinspection ResultOfMethodCallIgnored
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Copies video from given descriptor into the store.
+	 *
+	 * @return exported file.
+	 */
+	File export(FileDescriptor source, String id, long modified, String ext, ProgressListener listener)
+			throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create directory " + dir);
+		final File file = new File(dir, name(id, modified, ext));
+		final File part = File.createTempFile(PREFIX, EXT_PART, dir);
+		try (FileChannel in = new FileInputStream(source).getChannel();
+			 FileChannel out = new FileOutputStream(part).getChannel()) {
+			final long total = in.size();
+			long copied = 0;
+			while (copied < total) {
+				final long n = in.transferTo(copied, Math.min(CHUNK, total - copied), out);
+				if (n <= 0) throw new IOException("Unexpected end of video " + id);
+				copied += n;
+				if (listener != null && copied < total) listener.onProgress(copied, total);
+			}
+		} catch (IOException e) {
+			//noinspection ResultOfMethodCallIgnored
+			part.delete();
+			throw e;
+		}
+		synchronized (this) {
+			if (!part.renameTo(file)) {
+				//noinspection ResultOfMethodCallIgnored
+				part.delete();
+				throw new IOException("Cannot rename " + part + " to " + file);
+			}
+			trim(file);
+		}
+		return file;
+	}
+
+	/**
+	 * Deletes least recently used exports, except given one, until the store fits its size.
+	 */
+	private void trim(File keep) {
+		final File[] files = dir.listFiles();
+		if (files == null) return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				final long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+		long bytes = 0;
+		for (File file : files) bytes += file.length();
+		for (File file : files) {
+			if (bytes <= maxBytes) break;
+			if (file.equals(keep) || file.getName().endsWith(EXT_PART)) continue;
+			bytes -= file.length();
+			if (!file.delete()) Log.w(TAG, "Cannot delete " + file);
+		}
+	}
+
+	private static String name(String id, long modified, String ext) {
+		return PREFIX + id.replaceAll("[^\\w-]", "_") + "_" + modified + ext;
+	}
+}
@@ -1,4 +1,89 @@
 var exec = require("cordova/exec");
+var cordova = require("cordova");
+
+var DEF_CREDITS = 2;
+var requestSeq = 0;
+
+// Every listing gets a request ID, so that several of them may run at once
+// and each one may be acknowledged or cancelled on its own.
+function withRequestId(options) {
+	var result = {};
+	if (options) for (var key in options) result[key] = options[key];
+	if (result.requestId === undefined || result.requestId === null)
+		result.requestId = "req" + ++requestSeq;
+	return result;
+}
+
+// Unless a fixed interval is requested, bundled listings are paced by credits:
+// the plugin sends at most `credits` bundles ahead and waits for an "ack"
+// that is sent each time a bundle has been consumed by the success callback.
+// Only Android implements credits so far, other platforms keep the interval.
+function paced(options, successCallback) {
+	if (
+		cordova.platformId !== "android" ||
+		!options ||
+		!(options.limit > 0) ||
+		options.interval !== undefined
+	)
+		return { options: options, success: successCallback };
+	var paced = {};
+	for (var key in options) paced[key] = options[key];
+	if (!(paced.credits > 0)) paced.credits = DEF_CREDITS;
+	if (paced.autoAck === false)
+		return { options: paced, success: successCallback };
+	return {
+		options: paced,
+		success: function (result) {
+			try {
+				if (successCallback) successCallback(result);
+			} finally {
+				Photos.ack(paced.requestId, 1);
+			}
+		}
+	};
+}
+
+// A bundle in columnar layout is an array of field names followed by
+// an array of values per each field, see Photos.decodeColumnar().
+function isColumnar(bundle) {
+	return bundle.length > 0 && bundle[0] && bundle[0].constructor === Array;
+}
+
+function bundleLength(bundle) {
+	if (!isColumnar(bundle)) return bundle.length;
+	return bundle.length > 1 ? bundle[1].length : 0;
+}
+
+// Thumbnails of a batch are streamed one by one as [id, data] messages,
+// and the batch ends with a single-part message.
+function thumbnailBatch(
+	action,
+	ids,
+	options,
+	thumbnailCallback,
+	errorCallback,
+	doneCallback
+) {
+	if (typeof options === "function") {
+		doneCallback = errorCallback;
+		errorCallback = thumbnailCallback;
+		thumbnailCallback = options;
+		options = null;
+	}
+	options = withRequestId(options);
+	exec(
+		function (id, data) {
+			if (arguments.length < 2) {
+				if (doneCallback) doneCallback();
+			} else if (thumbnailCallback) thumbnailCallback(id, data);
+		},
+		errorCallback,
+		"Photos",
+		action,
+		[ids, options]
+	);
+	return options.requestId;
+}
 
 var Photos = {
 	collections: function (options, successCallback, errorCallback) {
@@ -37,10 +122,12 @@ var Photos = {
 				}
 				break;
 		}
-		exec(successCallback, errorCallback, "Photos", "photos", [
+		var p = paced(withRequestId(options), successCallback);
+		exec(p.success, errorCallback, "Photos", "photos", [
 			collectionIds,
-			options
+			p.options
 		]);
+		return p.options.requestId;
 	},
 
 	videos: function (collectionIds, options, successCallback, errorCallback) {
@@ -68,10 +155,82 @@ var Photos = {
 				}
 				break;
 		}
-		exec(successCallback, errorCallback, "Photos", "videos", [
+		var p = paced(withRequestId(options), successCallback);
+		exec(p.success, errorCallback, "Photos", "videos", [
 			collectionIds,
-			options
+			p.options
+		]);
+		return p.options.requestId;
+	},
+
+	media: function (collectionIds, options, successCallback, errorCallback) {
+		switch (typeof collectionIds) {
+			case "function":
+				errorCallback = options;
+				successCallback = collectionIds;
+				options = null;
+				collectionIds = null;
+				break;
+			case "string":
+				collectionIds = [collectionIds];
+				if (typeof options == "function") {
+					errorCallback = successCallback;
+					successCallback = options;
+					options = null;
+				}
+				break;
+			case "object":
+				if (collectionIds.constructor !== Array) {
+					errorCallback = successCallback;
+					successCallback = options;
+					options = collectionIds;
+					collectionIds = null;
+				}
+				break;
+		}
+		var p = paced(withRequestId(options), successCallback);
+		exec(p.success, errorCallback, "Photos", "media", [
+			collectionIds,
+			p.options
 		]);
+		return p.options.requestId;
+	},
+
+	changesSince: function (
+		token,
+		options,
+		changesCallback,
+		errorCallback,
+		doneCallback
+	) {
+		if (typeof options === "function") {
+			doneCallback = errorCallback;
+			errorCallback = changesCallback;
+			changesCallback = options;
+			options = null;
+		}
+		var p = paced(withRequestId(options), changesCallback);
+		exec(
+			function (result) {
+				// Bundles come as arrays, the delta ends with an object
+				if (result && result.constructor === Array) p.success(result);
+				else {
+					if (bundleLength(result.items) > 0 && changesCallback)
+						changesCallback(result.items);
+					if (doneCallback)
+						doneCallback({
+							token: result.token,
+							deleted: result.deleted,
+							reset: result.reset
+						});
+				}
+			},
+			errorCallback,
+			"Photos",
+			"changesSince",
+			[token || null, p.options]
+		);
+		return p.options.requestId;
 	},
 
 	thumbnail: function (photoId, options, successCallback, errorCallback) {
@@ -86,6 +245,96 @@ var Photos = {
 		]);
 	},
 
+	thumbnails: function (
+		photoIds,
+		options,
+		thumbnailCallback,
+		errorCallback,
+		doneCallback
+	) {
+		return thumbnailBatch(
+			"thumbnails",
+			photoIds,
+			options,
+			thumbnailCallback,
+			errorCallback,
+			doneCallback
+		);
+	},
+
+	videoThumbnail: function (videoId, options, successCallback, errorCallback) {
+		if (typeof options === "function") {
+			errorCallback = successCallback;
+			successCallback = options;
+			options = null;
+		}
+		exec(successCallback, errorCallback, "Photos", "videoThumbnail", [
+			videoId,
+			options
+		]);
+	},
+
+	videoThumbnails: function (
+		videoIds,
+		options,
+		thumbnailCallback,
+		errorCallback,
+		doneCallback
+	) {
+		return thumbnailBatch(
+			"videoThumbnails",
+			videoIds,
+			options,
+			thumbnailCallback,
+			errorCallback,
+			doneCallback
+		);
+	},
+
+	thumbnailCacheStats: function (reset, successCallback, errorCallback) {
+		if (typeof reset === "function") {
+			errorCallback = successCallback;
+			successCallback = reset;
+			reset = false;
+		}
+		exec(successCallback, errorCallback, "Photos", "thumbnailCacheStats", [
+			!!reset
+		]);
+	},
+
+	clearThumbnailCache: function (successCallback, errorCallback) {
+		exec(successCallback, errorCallback, "Photos", "clearThumbnailCache", []);
+	},
+
+	stats: function (successCallback, errorCallback) {
+		exec(successCallback, errorCallback, "Photos", "stats", []);
+	},
+
+	resetStats: function (successCallback, errorCallback) {
+		exec(successCallback, errorCallback, "Photos", "resetStats", []);
+	},
+
+	tile: function (
+		photoId,
+		rect,
+		sampleLevel,
+		options,
+		successCallback,
+		errorCallback
+	) {
+		if (typeof options === "function") {
+			errorCallback = successCallback;
+			successCallback = options;
+			options = null;
+		}
+		exec(successCallback, errorCallback, "Photos", "tile", [
+			photoId,
+			rect,
+			sampleLevel || 0,
+			options
+		]);
+	},
+
 	image: function (photoId, successCallback, errorCallback) {
 		exec(successCallback, errorCallback, "Photos", "image", [photoId]);
 	},
@@ -94,8 +343,59 @@ var Photos = {
 		exec(successCallback, errorCallback, "Photos", "video", [videoId]);
 	},
 
-	cancel: function () {
-		exec(null, null, "Photos", "cancel", []);
+	query: function (filter, sort, page, successCallback, errorCallback) {
+		exec(successCallback, errorCallback, "Photos", "query", [
+			filter || null,
+			sort || null,
+			page || null
+		]);
+	},
+
+	watch: function (options, changesCallback, errorCallback) {
+		if (typeof options === "function") {
+			errorCallback = changesCallback;
+			changesCallback = options;
+			options = null;
+		}
+		exec(changesCallback, errorCallback, "Photos", "watch", [options]);
+	},
+
+	unwatch: function (successCallback, errorCallback) {
+		exec(successCallback, errorCallback, "Photos", "unwatch", []);
+	},
+
+	cancel: function (requestId, photoIds) {
+		exec(
+			null,
+			null,
+			"Photos",
+			"cancel",
+			requestId ? [requestId, photoIds || null] : []
+		);
+	},
+
+	prefetchHint: function (photoIds, options) {
+		exec(null, null, "Photos", "prefetchHint", [photoIds || [], options || null]);
+	},
+
+	ack: function (requestId, credits) {
+		exec(null, null, "Photos", "ack", [requestId, credits || 1]);
+	},
+
+	decodeColumnar: function (bundle) {
+		if (!isColumnar(bundle)) return bundle;
+		var keys = bundle[0];
+		var count = bundleLength(bundle);
+		var items = new Array(count);
+		for (var i = 0; i < count; ++i) {
+			var item = {};
+			for (var k = 0; k < keys.length; ++k) {
+				var value = bundle[k + 1][i];
+				if (value !== null && value !== undefined) item[keys[k]] = value;
+			}
+			items[i] = item;
+		}
+		return items;
 	},
 
 	getPhotoLibraryAuthorization: function (successCallback, errorCallback) {